@@ -5,7 +5,10 @@ import static enigma.EnigmaException.*;
 /* Extra Credit Only */
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The reverse mapping is indexed
+ *  when the alphabet is built: alphabets whose characters span a compact
+ *  range use a direct-mapped table, and sparse or large Unicode alphabets
+ *  use an open-addressing hash table, so lookups take constant time.
  *  @author Chris Jereza
  */
 class Alphabet {
@@ -14,14 +17,8 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _charsString = chars;
-        _chars = new char[chars.length()];
-        for (int i = 0; i < _chars.length; i += 1) {
-            if (alreadyAdded(chars.charAt(i))) {
-                throw new EnigmaException("Alphabet cannot have duplicates.");
-            } else {
-                _chars[i] = chars.charAt(i);
-            }
-        }
+        _chars = chars.toCharArray();
+        buildIndex();
     }
 
     /** Returns the size of the alphabet. */
@@ -31,12 +28,7 @@ class Alphabet {
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        for (char x : _chars) {
-            if (x == c) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(c) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -51,22 +43,16 @@ class Alphabet {
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        for (int i = 0; i < size(); i += 1) {
-            if (_chars[i] == c) {
-                return i;
-            }
+        int index = indexOf(c);
+        if (index == -1) {
+            throw new EnigmaException("Character " + c + " not found.");
         }
-        throw new EnigmaException("Character " + c + " not found.");
+        return index;
     }
 
     /** Returns true if C has already been added to CHARS. */
     boolean alreadyAdded(char c) {
-        for (char x :_chars) {
-            if (x == c) {
-                return true;
-            }
-        }
-        return false;
+        return contains(c);
     }
 
     /** Returns String of all characters in alphabet. */
@@ -74,9 +60,111 @@ class Alphabet {
         return _charsString;
     }
 
+    /** Returns the index of C, or -1 if C is not in this alphabet. */
+    final int indexOf(char c) {
+        if (_direct != null) {
+            int k = c - _low;
+            if (k < 0 || k >= _direct.length) {
+                return -1;
+            }
+            return _direct[k];
+        }
+        int mask = _keys.length - 1;
+        for (int k = hash(c) & mask; _keys[k] != EMPTY; k = (k + 1) & mask) {
+            if (_keys[k] == c) {
+                return _values[k];
+            }
+        }
+        return -1;
+    }
+
+    /** Build the reverse index of _CHARS, rejecting duplicates. */
+    private void buildIndex() {
+        if (_chars.length == 0) {
+            _direct = new int[0];
+            return;
+        }
+        char low = _chars[0], high = _chars[0];
+        for (char c : _chars) {
+            low = (char) Math.min(low, c);
+            high = (char) Math.max(high, c);
+        }
+        int span = high - low + 1;
+        int maxDirect = Math.max(MIN_DIRECT_SPAN, DIRECT_DENSITY * size());
+        if (span <= maxDirect) {
+            _low = low;
+            _direct = new int[span];
+            for (int k = 0; k < span; k += 1) {
+                _direct[k] = -1;
+            }
+            for (int i = 0; i < _chars.length; i += 1) {
+                if (_direct[_chars[i] - low] != -1) {
+                    throw new EnigmaException(
+                        "Alphabet cannot have duplicates.");
+                }
+                _direct[_chars[i] - low] = i;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(2 * _chars.length) * 2;
+            _keys = new int[capacity];
+            _values = new int[capacity];
+            for (int k = 0; k < capacity; k += 1) {
+                _keys[k] = EMPTY;
+            }
+            int mask = capacity - 1;
+            for (int i = 0; i < _chars.length; i += 1) {
+                int k = hash(_chars[i]) & mask;
+                while (_keys[k] != EMPTY) {
+                    if (_keys[k] == _chars[i]) {
+                        throw new EnigmaException(
+                            "Alphabet cannot have duplicates.");
+                    }
+                    k = (k + 1) & mask;
+                }
+                _keys[k] = _chars[i];
+                _values[k] = i;
+            }
+        }
+    }
+
+    /** Return a well-mixed hash of C for the open-addressing table. */
+    private static int hash(char c) {
+        int h = c * HASH_MULTIPLIER;
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /** Smallest character span always indexed by a direct table. */
+    private static final int MIN_DIRECT_SPAN = 256;
+
+    /** Largest ratio of character span to alphabet size for which a
+     *  direct table is used. */
+    private static final int DIRECT_DENSITY = 4;
+
+    /** Marks an unused slot in _keys. */
+    private static final int EMPTY = -1;
+
+    /** Multiplier used to spread characters across the hash table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    /** Shift used to fold high hash bits into the low bits. */
+    private static final int HASH_SHIFT = 16;
+
     /** Array containing characters of this alphabet. */
     private char[] _chars;
 
     /** String containing the characters of this alphabet. */
     private String _charsString;
+
+    /** Smallest character covered by _direct. */
+    private char _low;
+
+    /** Index of character _low + k at position k, or -1, when this
+     *  alphabet is direct-mapped; otherwise null. */
+    private int[] _direct;
+
+    /** Characters in the hash table, or EMPTY, when hashed. */
+    private int[] _keys;
+
+    /** Index of the character in the same slot of _keys. */
+    private int[] _values;
 }
@@ -0,0 +1,68 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Chris Jereza
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and rejects each character of MISSING. */
+    private void checkAlphabet(Alphabet alpha, String chars, String missing) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            assertTrue(alpha.contains(chars.charAt(i)));
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+        for (int i = 0; i < missing.length(); i += 1) {
+            assertFalse(alpha.contains(missing.charAt(i)));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCompactAlphabet() {
+        String chars = "ZYXWVUTSRQPONMLKJIHGFEDCBA'\"!?1234567890.";
+        checkAlphabet(new Alphabet(chars), chars, "abc*\u00e9\uffff");
+    }
+
+    @Test
+    public void checkSparseAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0x20; c < 0xfff0; c += 37) {
+            chars.append((char) c);
+        }
+        checkAlphabet(new Alphabet(chars.toString()), chars.toString(),
+                      "!F\ufff0\uffff");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicates() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSparseDuplicates() {
+        new Alphabet("A\u4e00B\u4e00");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMissingCharacter() {
+        UPPER.toInt('a');
+    }
+
+}
@@ -0,0 +1,332 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Runs Main on many files in one JVM, several at a time, so that a large
+ *  set of messages need not pay for a JVM and a configuration parse per
+ *  file.  Each job is an ordinary run of Main with a configuration, input
+ *  and output file; jobs that name the same configuration file share one
+ *  parse of it, and each converts on a machine of its own.
+ *  @author Chris Jereza
+ */
+public final class Batch {
+
+    /** Run the jobs described by ARGS, which are either
+     *    CONFIG INPUT OUTPUT [CONFIG INPUT OUTPUT ...]
+     *  naming the configuration, input and output files of each job, or
+     *    DIR [OUTDIR]
+     *  naming a directory of input files F.inp, each converted with the
+     *  configuration in F.conf if there is one, and otherwise with the
+     *  one in DIR/default.conf.  With OUTDIR, the output of F.inp goes to
+     *  OUTDIR/F.out.  Without it, the output is compared with DIR/F.out,
+     *  ignoring differences in the amount of whitespace, and a line
+     *  reporting F.inp as OK, ERROR (output), ERROR (bad exit) or, if
+     *  DIR/F.out cannot be read, ERROR (no .out) is printed on the
+     *  standard output.
+     *
+     *  A job that fails reports its error on the standard error as Main
+     *  does, preceded by the name of its input file.  Reports appear in
+     *  the order of the jobs.  Exits normally if every job succeeds (and
+     *  matches), and otherwise with code 1.
+     *
+     *  Options start with "--" and may appear anywhere in ARGS:
+     *    --jobs=N   Run N jobs at a time (by default, one per available
+     *               processor).
+     *  Any other option is passed to Main for every job. */
+    public static void main(String... args) {
+        int code = run(args, System.out, System.err);
+        System.out.flush();
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Run the jobs described by ARGS as for main, printing reports on
+     *  OUT and errors on ERR.  Returns the exit code. */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        try {
+            return new Batch(args).process(out, err);
+        } catch (EnigmaException excp) {
+            err.printf("Error: %s%n", excp.getMessage());
+        }
+        return 1;
+    }
+
+    /** A batch of the jobs described by ARGS (see main). */
+    Batch(String[] args) {
+        args = parseOptions(args);
+        if (args.length >= 1 && args.length <= 2
+            && new File(args[0]).isDirectory()) {
+            addDirectory(new File(args[0]),
+                         args.length > 1 ? new File(args[1]) : null);
+        } else if (args.length > 0 && args.length % 3 == 0) {
+            for (int i = 0; i < args.length; i += 3) {
+                _jobs.add(new Job(new File(args[i]), new File(args[i + 1]),
+                                  new File(args[i + 2]), null));
+            }
+        } else {
+            throw error("Usage: java enigma.Batch [--jobs=N] "
+                        + "{DIR [OUTDIR] | CONFIG INPUT OUTPUT ...}");
+        }
+    }
+
+    /** Record the options in ARGS, returning the remaining arguments. */
+    private String[] parseOptions(String[] args) {
+        ArrayList<String> rest = new ArrayList<>();
+        ArrayList<String> options = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                rest.add(arg);
+            } else if (arg.startsWith("--jobs=")) {
+                try {
+                    _threads = Integer.parseInt(arg.substring(
+                                                  "--jobs=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad job count: %s", arg);
+                }
+                if (_threads < 1) {
+                    throw error("bad job count: %s", arg);
+                }
+            } else {
+                options.add(arg);
+            }
+        }
+        _options = options.toArray(new String[0]);
+        return rest.toArray(new String[0]);
+    }
+
+    /** Add a job for each input file in DIR, writing into OUTDIR, or
+     *  checking against the expected output in DIR if OUTDIR is null. */
+    private void addDirectory(File dir, File outDir) {
+        String[] names = dir.list((parent, name) -> name.endsWith(".inp"));
+        if (names == null) {
+            throw error("could not read directory %s", dir);
+        }
+        if (outDir != null && !outDir.isDirectory()) {
+            throw error("%s is not a directory", outDir);
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            String base = name.substring(0, name.length() - ".inp".length());
+            File config = new File(dir, base + ".conf");
+            if (!config.isFile()) {
+                config = new File(dir, DEFAULT_CONFIG);
+            }
+            if (outDir == null) {
+                _jobs.add(new Job(config, new File(dir, name), null,
+                                  new File(dir, base + ".out")));
+            } else {
+                _jobs.add(new Job(config, new File(dir, name),
+                                  new File(outDir, base + ".out"), null));
+            }
+        }
+    }
+
+    /** Run my jobs, printing reports on OUT and errors on ERR, and
+     *  return the exit code. */
+    int process(PrintStream out, PrintStream err) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Job>> pending = new ArrayDeque<>();
+        boolean ok = true;
+        try {
+            for (Job job : _jobs) {
+                pending.add(pool.submit(job));
+                while (pending.size() >= MAX_PENDING_PER_THREAD * _threads) {
+                    ok &= report(pending.remove(), out, err);
+                }
+            }
+            while (!pending.isEmpty()) {
+                ok &= report(pending.remove(), out, err);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return ok ? 0 : 1;
+    }
+
+    /** Return the cache of configurations my jobs share. */
+    ConfigCache configs() {
+        return _configs;
+    }
+
+    /** Report the outcome of the job run by RESULT, waiting for it if
+     *  need be, on OUT and ERR.  Returns true iff it succeeded. */
+    private boolean report(Future<Job> result, PrintStream out,
+                           PrintStream err) {
+        Job job;
+        try {
+            job = result.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause());
+        }
+        if (!job.errors().isEmpty()) {
+            err.printf("%s: %s", job.name(), job.errors());
+        }
+        if (job.expected() == null) {
+            return job.code() == 0;
+        } else if (job.code() != 0) {
+            out.printf("%s: ERROR (bad exit)%n", job.name());
+        } else if (!job.hasExpected()) {
+            out.printf("%s: ERROR (no .out)%n", job.name());
+        } else if (!job.matches()) {
+            out.printf("%s: ERROR (output)%n", job.name());
+        } else {
+            out.printf("%s: OK%n", job.name());
+            return true;
+        }
+        return false;
+    }
+
+    /** Return TEXT with trailing whitespace removed from each line and
+     *  each other run of whitespace replaced by a single space, treating
+     *  a missing final line terminator as whitespace, as diff -b does. */
+    static String normalize(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (String line : text.replaceFirst("\\R\\z", "")
+                 .split("\\R", -1)) {
+            result.append(line.replaceAll("\\s+$", "")
+                          .replaceAll("\\s+", " "))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /** One run of Main. */
+    private class Job implements Callable<Job> {
+
+        /** A job converting INPUT with the configuration in CONFIG,
+         *  writing to OUTPUT, or, if OUTPUT is null, comparing the output
+         *  with the contents of EXPECTED. */
+        Job(File config, File input, File output, File expected) {
+            _config = config;
+            _input = input;
+            _output = output;
+            _expected = expected;
+        }
+
+        @Override
+        public Job call() {
+            ArrayList<String> args = new ArrayList<>(Arrays.asList(_options));
+            args.add(_config.getPath());
+            args.add(_input.getPath());
+            OutputStream out = OutputStream.nullOutputStream();
+            ByteArrayOutputStream captured = null;
+            if (_output != null) {
+                args.add(_output.getPath());
+            } else {
+                out = captured = new ByteArrayOutputStream();
+            }
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            _code = Main.run(args.toArray(new String[0]), null,
+                             InputStream.nullInputStream(), out,
+                             new PrintStream(errors, true), false,
+                             _configs);
+            _errors = errors.toString();
+            if (captured != null && _code == 0) {
+                String expected = readExpected();
+                _hasExpected = expected != null;
+                _matches = _hasExpected
+                    && normalize(captured.toString())
+                       .equals(normalize(expected));
+            }
+            return this;
+        }
+
+        /** Return the contents of my expected output, or null if it
+         *  cannot be read. */
+        private String readExpected() {
+            try {
+                return new String(Files.readAllBytes(_expected.toPath()));
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        /** Return the name by which my reports identify me. */
+        String name() {
+            return _input.getPath();
+        }
+
+        /** Return the file of expected output, or null if I write mine
+         *  to a file. */
+        File expected() {
+            return _expected;
+        }
+
+        /** Return Main's exit code. */
+        int code() {
+            return _code;
+        }
+
+        /** Return Main's error messages. */
+        String errors() {
+            return _errors;
+        }
+
+        /** Return true iff my file of expected output could be read. */
+        boolean hasExpected() {
+            return _hasExpected;
+        }
+
+        /** Return true iff my output matched the expected output. */
+        boolean matches() {
+            return _matches;
+        }
+
+        /** Configuration file. */
+        private final File _config;
+        /** Input file. */
+        private final File _input;
+        /** Output file, or null. */
+        private final File _output;
+        /** File of expected output, or null. */
+        private final File _expected;
+        /** Main's exit code. */
+        private int _code;
+        /** Main's error messages. */
+        private String _errors;
+        /** True iff _expected could be read. */
+        private boolean _hasExpected;
+        /** True iff the output matched _expected. */
+        private boolean _matches;
+    }
+
+    /** Configuration used for inputs without one of their own. */
+    static final String DEFAULT_CONFIG = "default.conf";
+
+    /** Most jobs per thread run ahead of the reports. */
+    private static final int MAX_PENDING_PER_THREAD = 16;
+
+    /** The jobs, in order. */
+    private final ArrayList<Job> _jobs = new ArrayList<>();
+
+    /** Options passed to Main. */
+    private String[] _options;
+
+    /** Number of jobs run at a time. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Parsed configuration files, shared by all jobs. */
+    private final ConfigCache _configs = new ConfigCache();
+}
@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Chris Jereza
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "      (RX) (SZ) (TV)\n";
+
+    /** Settings line for the messages. */
+    private static final String SETTINGS =
+        "* B BETA III II I AXLE (HQ) (EX)\n";
+
+    /** Write TEXT to the file NAME in DIR. */
+    private void write(File dir, String name, String text)
+        throws IOException {
+        Files.write(new File(dir, name).toPath(), text.getBytes());
+    }
+
+    /** Delete DIR and the files in it. */
+    private void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                delete(file);
+            } else {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDirectory() throws Exception {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            write(dir, "default.conf", CONFIG);
+            write(dir, "a.inp", SETTINGS + "FROM HIS SHOULDER\n");
+            write(dir, "a.out", "UTGXL CUNYI  YOUJI\n");
+            write(dir, "b.inp", SETTINGS + "FROM HIS\n");
+            write(dir, "b.out", "UTGXL CU \n");
+            write(dir, "c.inp", SETTINGS + "FROM HIS\n");
+            write(dir, "c.out", "UTGXL CUN\n");
+            write(dir, "d.inp", "FROM HIS\n");
+            write(dir, "d.out", "");
+            write(dir, "e.inp", SETTINGS + "FROM HIS\n");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            Batch batch = new Batch(new String[] { "--jobs=3",
+                                                   dir.getPath() });
+            assertEquals(1, batch.process(new PrintStream(out, true),
+                                          new PrintStream(err, true)));
+            String name = dir.getPath() + File.separator;
+            assertEquals(String.format("%sa.inp: OK%n%sb.inp: OK%n"
+                                       + "%sc.inp: ERROR (output)%n"
+                                       + "%sd.inp: ERROR (bad exit)%n"
+                                       + "%se.inp: ERROR (no .out)%n",
+                                       name, name, name, name, name),
+                         out.toString());
+            assertEquals(String.format("%sd.inp: Error: "
+                                       + "Input must begin with Setting.%n",
+                                       name),
+                         err.toString());
+            assertEquals(4, batch.configs().hits());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void checkTriples() throws Exception {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            write(dir, "test.conf", CONFIG);
+            write(dir, "a.inp", SETTINGS + "FROM HIS SHOULDER\n");
+            write(dir, "b.inp", SETTINGS + "UTGXL CUNYI YOUJI\n");
+            String[] args = new String[6];
+            for (int i = 0; i < 2; i += 1) {
+                String base = new File(dir, "ab".substring(i, i + 1))
+                    .getPath();
+                args[3 * i] = new File(dir, "test.conf").getPath();
+                args[3 * i + 1] = base + ".inp";
+                args[3 * i + 2] = base + ".out";
+            }
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(0, Batch.run(args, new PrintStream(err, true),
+                                      new PrintStream(err, true)));
+            assertEquals("", err.toString());
+            assertEquals(String.format("UTGXL CUNYI YOUJI %n"),
+                         new String(Files.readAllBytes(
+                                     new File(dir, "a.out").toPath())));
+            assertEquals(String.format("FROMH ISSHO ULDER %n"),
+                         new String(Files.readAllBytes(
+                                     new File(dir, "b.out").toPath())));
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package enigma;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the keys of a ciphertext that are consistent with a crib: a
+ *  stretch of probable plaintext at a known or unknown place in it, in
+ *  the manner of the Turing-Welchman bombe.
+ *
+ *  Lining the crib up with the ciphertext gives a menu: each crib letter
+ *  P and the ciphertext letter C under it are joined by an edge labeled
+ *  with its position I.  If the plugboard takes P to X, then the rotors
+ *  at position I take X to the letter the plugboard takes C to, and
+ *  conversely.  So, for each rotor order and start position, one guess
+ *  at where the plugboard takes the most connected letter of the menu
+ *  implies, along the edges, where it takes the others.  Since the
+ *  plugboard swaps pairs, each implication also implies its mirror image
+ *  (the diagonal board).  A guess that implies two partners for any
+ *  letter is false, as are all the guesses it implied; a position at
+ *  which some guess implies no contradiction is a stop, and is reported
+ *  with the plugboard pairs the guess implies.  Positions of the crib at
+ *  which a letter would encrypt to itself are skipped for rotor orders
+ *  whose reflector has no fixed points, since no such machine can do
+ *  that.
+ *
+ *  Everything is done with the configured alphabet, and with the
+ *  machine's own stepping, so that rotors with any notches, and machines
+ *  of any size, may be searched.  The start positions of each rotor
+ *  order are divided into blocks, as for KeySearch, and the blocks among
+ *  several threads, each with a machine and tables of its own.
+ *  @author Chris Jereza
+ */
+public final class Bombe {
+
+    /** Search for the keys of the ciphertext in ARGS[2] (or on the
+     *  standard input, if there is no ARGS[2]) for the machine in the
+     *  configuration file ARGS[0] consistent with the crib ARGS[1],
+     *  printing a settings line for each stop on the standard output.
+     *  Whitespace in the crib and the ciphertext is ignored, and letters
+     *  are upper-cased.  Exits normally if there are no errors;
+     *  otherwise with code 1.
+     *
+     *  Options start with "--" and may appear anywhere in ARGS:
+     *    --offset=N   The crib lines up with the ciphertext starting at
+     *                 character N (numbering from 0).  By default, every
+     *                 place is tried.
+     *    --threads=N  Search on N threads (by default, one per available
+     *                 processor).
+     *    --stops=K    Report at most K stops (by default, 100), those of
+     *                 the earliest rotor orders and positions. */
+    public static void main(String... args) {
+        int code = run(args, System.in, System.out, System.err);
+        System.out.flush();
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Search as for main with arguments ARGS, reading the ciphertext
+     *  from IN if ARGS names no file, printing stops on OUT and errors
+     *  on ERR.  Returns the exit code. */
+    static int run(String[] args, InputStream in, PrintStream out,
+                   PrintStream err) {
+        try {
+            ArrayList<String> rest = new ArrayList<>();
+            int offset = -1, stops = DEFAULT_STOPS,
+                threads = Runtime.getRuntime().availableProcessors();
+            for (String arg : args) {
+                if (arg.startsWith("--offset=")) {
+                    offset = intOption(arg);
+                } else if (arg.startsWith("--threads=")) {
+                    threads = intOption(arg);
+                } else if (arg.startsWith("--stops=")) {
+                    stops = intOption(arg);
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option: %s", arg);
+                } else {
+                    rest.add(arg);
+                }
+            }
+            if (rest.size() < 2 || rest.size() > 3) {
+                throw error("Usage: java enigma.Bombe [--offset=N] "
+                            + "[--threads=N] [--stops=K] CONFIG CRIB "
+                            + "[INPUT]");
+            }
+            MachineSpec spec = Main.loadConfig(rest.get(0));
+            String text = rest.size() > 2 ? KeySearch.readFile(rest.get(2))
+                : KeySearch.readStream(in);
+            Bombe bombe =
+                new Bombe(spec, KeySearch.ciphertext(text, spec.alphabet()),
+                          KeySearch.ciphertext(rest.get(1),
+                                               spec.alphabet()));
+            if (offset >= 0) {
+                bombe.setOffset(offset);
+            }
+            bombe.setThreads(threads);
+            bombe.setStops(stops);
+            for (String stop : bombe.search()) {
+                out.println(stop);
+            }
+            return 0;
+        } catch (EnigmaException excp) {
+            err.printf("Error: %s%n", excp.getMessage());
+        }
+        return 1;
+    }
+
+    /** Return the value of the option ARG, of the form --NAME=N. */
+    private static int intOption(String arg) {
+        try {
+            return Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+        } catch (NumberFormatException excp) {
+            throw error("bad option value: %s", arg);
+        }
+    }
+
+    /** A bombe searching for the keys of CIPHERTEXT on machines described
+     *  by SPEC that are consistent with CRIB, both given as indices in
+     *  the alphabet of SPEC. */
+    Bombe(MachineSpec spec, int[] ciphertext, int[] crib) {
+        if (crib.length == 0 || crib.length > ciphertext.length) {
+            throw error("crib must be no longer than the ciphertext");
+        }
+        _spec = spec;
+        _ciphertext = ciphertext;
+        _crib = crib;
+        _orders = KeySearch.rotorOrders(spec.newMachine().getAllRotors(),
+                                        spec.numRotors(), spec.numPawls());
+        _positions = KeySearch.positions(spec);
+        setOffsets(0, ciphertext.length - crib.length);
+    }
+
+    /** Line the crib up only with the ciphertext starting at character
+     *  number OFFSET. */
+    void setOffset(int offset) {
+        if (offset < 0 || offset + _crib.length > _ciphertext.length) {
+            throw error("crib does not fit at offset %d", offset);
+        }
+        setOffsets(offset, offset);
+    }
+
+    /** Make the menus for the crib lined up with the ciphertext starting
+     *  at each character from FIRST through LAST. */
+    private void setOffsets(int first, int last) {
+        _menus.clear();
+        for (int off = first; off <= last; off += 1) {
+            _menus.add(new Menu(off));
+        }
+    }
+
+    /** Search on N threads. */
+    void setThreads(int n) {
+        if (n < 1) {
+            throw error("must search on at least one thread");
+        }
+        _threads = n;
+    }
+
+    /** Report at most K stops. */
+    void setStops(int k) {
+        if (k < 1) {
+            throw error("must report at least one stop");
+        }
+        _maxStops = k;
+    }
+
+    /** Return the rotor orders searched, which must not be changed. */
+    List<String[]> orders() {
+        return _orders;
+    }
+
+    /** Return the number of stops found by the last search, including
+     *  any not reported. */
+    long stops() {
+        return _stops.get();
+    }
+
+    /** Search all rotor orders, returning the settings lines of the
+     *  stops, in order of rotor order, start position and offset. */
+    List<String> search() {
+        return search(0, _orders.size());
+    }
+
+    /** Search the rotor orders numbered FROM through TO - 1 in orders(),
+     *  returning stops as for search(). */
+    List<String> search(int from, int to) {
+        if (from < 0 || to > _orders.size() || from > to) {
+            throw error("bad range of rotor orders: %d to %d", from, to);
+        }
+        _stops.set(0);
+        TreeSet<Stop> stops = new TreeSet<>();
+        int blocks = KeySearch.blocks(_positions, to - from, _threads);
+        long blockSize = (_positions + blocks - 1) / blocks;
+        AtomicLong next = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            ArrayList<Future<TreeSet<Stop>>> results = new ArrayList<>();
+            for (int t = 0; t < _threads; t += 1) {
+                results.add(pool.submit(
+                                new Worker(next, (long) (to - from) * blocks,
+                                           from, blocks, blockSize)));
+            }
+            for (Future<TreeSet<Stop>> result : results) {
+                for (Stop stop : result.get()) {
+                    keep(stops, stop);
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (Stop stop : stops) {
+            result.add(stop.settings);
+        }
+        return result;
+    }
+
+    /** Add STOP to STOPS, keeping only the first _maxStops. */
+    private void keep(TreeSet<Stop> stops, Stop stop) {
+        stops.add(stop);
+        if (stops.size() > _maxStops) {
+            stops.pollLast();
+        }
+    }
+
+    /** The menu of the crib lined up at one place in the ciphertext. */
+    private class Menu {
+
+        /** The menu of the crib lined up with the ciphertext starting at
+         *  character OFFSET. */
+        Menu(int offset) {
+            int len = _crib.length, size = _spec.alphabet().size();
+            _offset = offset;
+            int[] degree = new int[size + 1];
+            for (int i = 0; i < len; i += 1) {
+                int p = _crib[i], c = _ciphertext[offset + i];
+                _selfEncrypts |= p == c;
+                degree[p + 1] += 1;
+                degree[c + 1] += 1;
+            }
+            _first = degree;
+            for (int x = 0; x < size; x += 1) {
+                _first[x + 1] += _first[x];
+            }
+            _edges = new int[2 * len];
+            int[] fill = _first.clone();
+            for (int i = 0; i < len; i += 1) {
+                int p = _crib[i], c = _ciphertext[offset + i];
+                _edges[fill[p]] = 2 * i;
+                fill[p] += 1;
+                _edges[fill[c]] = 2 * i + 1;
+                fill[c] += 1;
+            }
+            _tests = testLetters(size);
+        }
+
+        /** Return the most connected letter of each connected part of
+         *  the menu, the largest part first, for an alphabet of SIZE
+         *  letters. */
+        private int[] testLetters(int size) {
+            int[] part = new int[size];
+            ArrayList<int[]> parts = new ArrayList<>();
+            for (int x = 0; x < size; x += 1) {
+                part[x] = -1;
+            }
+            int[] stack = new int[size];
+            for (int x = 0; x < size; x += 1) {
+                if (part[x] != -1 || edges(x) == 0) {
+                    continue;
+                }
+                int best = x, edges = 0, top = 0;
+                part[x] = parts.size();
+                stack[top] = x;
+                top += 1;
+                while (top > 0) {
+                    top -= 1;
+                    int y = stack[top];
+                    edges += edges(y);
+                    if (edges(y) > edges(best)) {
+                        best = y;
+                    }
+                    for (int k = _first[y]; k < _first[y + 1]; k += 1) {
+                        int z = other(_edges[k]);
+                        if (part[z] == -1) {
+                            part[z] = parts.size();
+                            stack[top] = z;
+                            top += 1;
+                        }
+                    }
+                }
+                parts.add(new int[] { edges, best });
+            }
+            parts.sort((a, b) -> b[0] - a[0]);
+            int[] result = new int[parts.size()];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = parts.get(k)[1];
+            }
+            return result;
+        }
+
+        /** Return the number of ends of edges at letter X. */
+        int edges(int x) {
+            return _first[x + 1] - _first[x];
+        }
+
+        /** Return the letter at the far end of the edge end END. */
+        int other(int end) {
+            int i = end / 2;
+            return end % 2 == 0 ? _ciphertext[_offset + i] : _crib[i];
+        }
+
+        /** Position in the ciphertext of the first crib letter. */
+        private final int _offset;
+
+        /** True iff some crib letter is the ciphertext letter under
+         *  it. */
+        private boolean _selfEncrypts;
+
+        /** The ends of the edges at letter X are _edges[_first[X] ..
+         *  _first[X + 1] - 1]. */
+        private final int[] _first;
+
+        /** Ends of edges, grouped by letter: 2I for the crib end of the
+         *  edge at crib position I, and 2I + 1 for its ciphertext end. */
+        private final int[] _edges;
+
+        /** The letters from which guesses are made, one per connected
+         *  part of the menu, largest part first. */
+        private final int[] _tests;
+    }
+
+    /** A stop, ordered by rotor order, start position, offset and then
+     *  settings line. */
+    private static class Stop implements Comparable<Stop> {
+
+        /** A stop of rotor order ORDER at start position POSITION with the
+         *  crib at OFFSET, reported as SETTINGS. */
+        Stop(int order, long position, int offset, String settings) {
+            this.order = order;
+            this.position = position;
+            this.offset = offset;
+            this.settings = settings;
+        }
+
+        @Override
+        public int compareTo(Stop other) {
+            if (order != other.order) {
+                return Integer.compare(order, other.order);
+            } else if (position != other.position) {
+                return Long.compare(position, other.position);
+            } else if (offset != other.offset) {
+                return Integer.compare(offset, other.offset);
+            }
+            return settings.compareTo(other.settings);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Stop && compareTo((Stop) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return settings.hashCode();
+        }
+
+        /** Number of the rotor order. */
+        private final int order;
+        /** Number of the start position. */
+        private final long position;
+        /** Position of the crib in the ciphertext. */
+        private final int offset;
+        /** Settings line of the stop. */
+        private final String settings;
+    }
+
+    /** One thread of a search, with a machine and tables of its own. */
+    private class Worker implements Callable<TreeSet<Stop>> {
+
+        /** A worker searching block after block of start positions
+         *  numbered from NEXT, which it advances, up to LIMIT - 1.  Block
+         *  B is positions (B % BLOCKS) * BLOCKSIZE onward, up to
+         *  BLOCKSIZE of them, of rotor order FROM + B / BLOCKS. */
+        Worker(AtomicLong next, long limit, int from, int blocks,
+               long blockSize) {
+            _next = next;
+            _limit = limit;
+            _from = from;
+            _blocks = blocks;
+            _blockSize = blockSize;
+            _size = _spec.alphabet().size();
+            _machine = _spec.newMachine();
+            _start = new int[_spec.numRotors()];
+            _firstRow = _menus.get(0)._offset;
+            int rows = _menus.get(_menus.size() - 1)._offset + _crib.length;
+            _table = new int[(rows - _firstRow) * _size];
+            _inverse = new int[_table.length];
+            _implied = new boolean[_size * _size];
+            _queue = new int[_size * _size];
+            _partners = new int[_size];
+            _ruledOut = new boolean[_size];
+        }
+
+        @Override
+        public TreeSet<Stop> call() {
+            TreeSet<Stop> stops = new TreeSet<>();
+            int k = -1;
+            boolean selfEncrypts = false;
+            for (long b = _next.getAndIncrement(); b < _limit;
+                 b = _next.getAndIncrement()) {
+                if (_from + (int) (b / _blocks) != k) {
+                    k = _from + (int) (b / _blocks);
+                    _machine.insertRotors(_orders.get(k));
+                    selfEncrypts = !_machine.rotors()[0]
+                        .permutation().derangement();
+                }
+                long first = (b % _blocks) * _blockSize;
+                long last = Math.min(first + _blockSize, _positions);
+                setStart(first);
+                for (long p = first; p < last; p += 1) {
+                    fillTables();
+                    for (Menu menu : _menus) {
+                        if (selfEncrypts || !menu._selfEncrypts) {
+                            test(menu, k, p, stops);
+                        }
+                    }
+                    for (int i = _start.length - 1; i > 0; i -= 1) {
+                        _start[i] += 1;
+                        if (_start[i] < _size) {
+                            break;
+                        }
+                        _start[i] = 0;
+                    }
+                }
+            }
+            return stops;
+        }
+
+        /** Set _start to start position number POSITION. */
+        private void setStart(long position) {
+            for (int i = _start.length - 1; i > 0; i -= 1) {
+                _start[i] = (int) (position % _size);
+                position /= _size;
+            }
+        }
+
+        /** Set my machine to _start and fill _table and _inverse with
+         *  the permutations of its rotors, with no plugboard, at each
+         *  position that a crib may be lined up with. */
+        private void fillTables() {
+            _machine.setRotors(_start);
+            for (int i = 0; i < _firstRow; i += 1) {
+                _machine.advanceMachine();
+            }
+            for (int off = 0; off < _table.length; off += _size) {
+                _machine.nextPermutation(_table, off);
+                for (int x = 0; x < _size; x += 1) {
+                    _inverse[off + _table[off + x]] = x;
+                }
+            }
+        }
+
+        /** Test MENU on the tables for rotor order K at start position P,
+         *  adding any stops to STOPS. */
+        private void test(Menu menu, int k, long p, TreeSet<Stop> stops) {
+            if (menu._tests.length == 0) {
+                return;
+            }
+            for (int j = 1; j < menu._tests.length; j += 1) {
+                if (!satisfiable(menu, menu._tests[j])) {
+                    return;
+                }
+            }
+            int t = menu._tests[0];
+            clear(_ruledOut);
+            for (int g = 0; g < _size; g += 1) {
+                if (_ruledOut[g]) {
+                    continue;
+                }
+                if (propagate(menu, t, g)) {
+                    _stops.incrementAndGet();
+                    if (stops.size() < _maxStops
+                        || stops.last().compareTo(
+                               new Stop(k, p, menu._offset, "")) > 0) {
+                        keep(stops, new Stop(k, p, menu._offset,
+                                             settingsLine(k)));
+                    }
+                }
+                ruleOut(t);
+            }
+        }
+
+        /** Record that every guess at the partner of T that the last
+         *  propagate implied is false, and forget what it recorded.  Each
+         *  implication holds both ways, so these guesses imply the
+         *  contradiction just as the first did. */
+        private void ruleOut(int t) {
+            for (int n = 0; n < _count; n += 1) {
+                int e = _queue[n];
+                if (e / _size == t) {
+                    _ruledOut[e % _size] = true;
+                }
+            }
+            reset();
+        }
+
+        /** Return true iff some guess at the partner of letter T
+         *  implies no contradiction in MENU. */
+        private boolean satisfiable(Menu menu, int t) {
+            clear(_ruledOut);
+            boolean result = false;
+            for (int g = 0; g < _size && !result; g += 1) {
+                if (!_ruledOut[g]) {
+                    result = propagate(menu, t, g);
+                    ruleOut(t);
+                }
+            }
+            return result;
+        }
+
+        /** Follow out the consequences in MENU of the guess that the
+         *  plugboard takes T to G, recording them in _implied,
+         *  _partners and _queue.  Returns false as soon as some letter is
+         *  implied to have two partners, and otherwise true. */
+        private boolean propagate(Menu menu, int t, int g) {
+            _count = 0;
+            if (!imply(t, g)) {
+                return false;
+            }
+            for (int n = 0; n < _count; n += 1) {
+                int x = _queue[n] / _size, y = _queue[n] % _size;
+                if (!imply(y, x)) {
+                    return false;
+                }
+                for (int k = menu._first[x]; k < menu._first[x + 1];
+                     k += 1) {
+                    int end = menu._edges[k], i = end / 2;
+                    int row = (menu._offset + i - _firstRow) * _size;
+                    boolean ok;
+                    if (end % 2 == 0) {
+                        ok = imply(_ciphertext[menu._offset + i],
+                                   _table[row + y]);
+                    } else {
+                        ok = imply(_crib[i], _inverse[row + y]);
+                    }
+                    if (!ok) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that the plugboard takes X to Y, unless already known.
+         *  Returns false iff X is already known to go elsewhere. */
+        private boolean imply(int x, int y) {
+            int e = x * _size + y;
+            if (_implied[e]) {
+                return true;
+            }
+            _implied[e] = true;
+            _queue[_count] = e;
+            _count += 1;
+            if (_partners[x] != 0) {
+                return false;
+            }
+            _partners[x] = y + 1;
+            return true;
+        }
+
+        /** Forget everything recorded by the last propagate. */
+        private void reset() {
+            for (int n = 0; n < _count; n += 1) {
+                int e = _queue[n];
+                _implied[e] = false;
+                _partners[e / _size] = 0;
+            }
+            _count = 0;
+        }
+
+        /** Set all of FLAGS to false. */
+        private void clear(boolean[] flags) {
+            for (int i = 0; i < flags.length; i += 1) {
+                flags[i] = false;
+            }
+        }
+
+        /** Return the settings line for rotor order K started at _start
+         *  with the plugboard pairs implied by the last propagate. */
+        private String settingsLine(int k) {
+            int[] plugs = new int[_size];
+            for (int x = 0; x < _size; x += 1) {
+                plugs[x] = _partners[x] == 0 ? x : _partners[x] - 1;
+            }
+            return KeySearch.settingsLine(_spec.alphabet(), _orders.get(k),
+                                          _start, plugs);
+        }
+
+        /** Source of the numbers of the blocks to search. */
+        private final AtomicLong _next;
+
+        /** One more than the number of the last block to search. */
+        private final long _limit;
+
+        /** Number of the first rotor order searched. */
+        private final int _from;
+
+        /** Number of blocks of each rotor order's start positions. */
+        private final int _blocks;
+
+        /** Number of start positions in each block but the last. */
+        private final long _blockSize;
+
+        /** Size of the alphabet. */
+        private final int _size;
+
+        /** The machine whose permutations fill the tables. */
+        private final Machine _machine;
+
+        /** Start setting of each slot. */
+        private final int[] _start;
+
+        /** Number of the first position in the ciphertext that any crib
+         *  is lined up with. */
+        private final int _firstRow;
+
+        /** The permutation of the rotors at each position from _firstRow
+         *  on, one after another. */
+        private final int[] _table;
+
+        /** The inverses of the permutations in _table. */
+        private final int[] _inverse;
+
+        /** For each letter X and Y, whether the plugboard is known to
+         *  take X to Y, as element X * _size + Y. */
+        private final boolean[] _implied;
+
+        /** The elements of _implied that are set, in the order set. */
+        private final int[] _queue;
+
+        /** Number of elements in _queue. */
+        private int _count;
+
+        /** One more than the partner each letter is known to have, or 0
+         *  if none is known. */
+        private final int[] _partners;
+
+        /** Guesses for the test letter known to be false. */
+        private final boolean[] _ruledOut;
+    }
+
+    /** Default greatest number of stops reported. */
+    private static final int DEFAULT_STOPS = 100;
+
+    /** Description of the machine searched. */
+    private final MachineSpec _spec;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** The rotor orders searched. */
+    private final List<String[]> _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+    /** The menus of each place the crib may be lined up. */
+    private final ArrayList<Menu> _menus = new ArrayList<>();
+
+    /** Number of stops found by the current search. */
+    private final AtomicLong _stops = new AtomicLong();
+
+    /** Number of threads searching. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Greatest number of stops reported. */
+    private int _maxStops = DEFAULT_STOPS;
+}
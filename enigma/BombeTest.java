@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the bombe.
+ *  @author Chris Jereza
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the stops found for the ciphertext of PLAINTEXT under
+     *  KEY on a machine described by SPEC, with the crib at OFFSET in
+     *  PLAINTEXT of length LEN, known to be at OFFSET iff KNOWN. */
+    private List<String> stops(MachineSpec spec, String key,
+                               String plaintext, int offset, int len,
+                               boolean known) {
+        String ciphertext = KeySearchTest.convert(spec, key, plaintext);
+        Alphabet alpha = spec.alphabet();
+        Bombe bombe = new Bombe(spec, KeySearch.ciphertext(ciphertext, alpha),
+                                KeySearch.ciphertext(
+                                    plaintext.substring(offset,
+                                                        offset + len),
+                                    alpha));
+        if (known) {
+            bombe.setOffset(offset);
+        }
+        bombe.setThreads(2);
+        List<String> result = bombe.search();
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkKnownOffset() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        List<String> stops = stops(spec, "* B III I KD (AT) (OS)",
+                                   KeySearchTest.PLAINTEXT, 0, 24, true);
+        assertTrue(stops.contains("* B III I KD (AT) (OS)"));
+    }
+
+    @Test
+    public void checkUnknownOffset() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        List<String> stops = stops(spec, "* C II I QZ (HE) (RW)",
+                                   KeySearchTest.PLAINTEXT.substring(0, 80),
+                                   40, 24, false);
+        boolean found = false;
+        for (String stop : stops) {
+            found |= stop.startsWith("* C II I QZ ");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void checkSmallAlphabet() {
+        String config = "ABCDEFGHIJKLMN 4 2\n"
+            + " P MACF (ACEGIKM) (BDFHJLN)\n"
+            + " Q MGN (AMBLCKD) (EJ) (FIGH) (N)\n"
+            + " R MBDHL (ANBMCL) (DKEJ) (FIGH)\n"
+            + " S N (AH) (BIC) (DJ) (EK) (FLMN) (G)\n"
+            + " T R (AN) (BM) (CL) (DK) (EJ) (FI) (GH)\n"
+            + " U R (AB) (CD) (EF) (GH) (IJ) (KL) (MN)\n";
+        MachineSpec spec = TextRotorLibrary.load(config.toCharArray());
+        String plaintext = "ABBAMANCHILLEDNIMBLEDEMANDHACKLEDJAM"
+            + "MAINLINEDNEEDLEBAKEDCHANNELHIDDEN";
+        String key = "* U S R Q KDB (AC) (JM)";
+        List<String> stops = stops(spec, key, plaintext, 10, 20, true);
+        assertTrue(stops.contains(key));
+    }
+
+    @Test
+    public void checkOneOrder() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        int[] ciphertext = KeySearch.ciphertext(
+            KeySearchTest.convert(spec, "* B III I KD (AT) (OS)",
+                                  KeySearchTest.PLAINTEXT), UPPER);
+        int[] crib = KeySearch.ciphertext(
+            KeySearchTest.PLAINTEXT.substring(0, 16), UPPER);
+        String expected = null;
+        for (int threads = 1; threads <= 3; threads += 2) {
+            Bombe bombe = new Bombe(spec, ciphertext, crib);
+            bombe.setOffset(0);
+            bombe.setThreads(threads);
+            int k = 0;
+            while (!String.join(" ", bombe.orders().get(k))
+                   .equals("B III I")) {
+                k += 1;
+            }
+            List<String> stops = bombe.search(k, k + 1);
+            assertTrue(stops.contains("* B III I KD (AT) (OS)"));
+            if (expected == null) {
+                expected = stops.toString();
+            }
+            assertEquals(expected, stops.toString());
+        }
+    }
+}
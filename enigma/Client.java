@@ -0,0 +1,138 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** A stand-in for Main that has a Daemon do the work when one is running,
+ *  and otherwise runs Main itself.  It takes the same arguments as Main
+ *  and produces the same output, error messages and exit code, so
+ *  scripts may use either.
+ *
+ *  The client sends the daemon its protocol version, working directory,
+ *  whether it is on a terminal, and its arguments, then copies its
+ *  standard input (when Main would read it) as frames each consisting
+ *  of a length and that many bytes, ending with an empty frame.  It
+ *  copies the output and error frames it gets back to its standard
+ *  output and error, and exits with the code in the final frame.
+ *  @author Chris Jereza
+ */
+public final class Client {
+
+    /** Process ARGS as Main would, through the daemon if possible.  A
+     *  socket that another user could have made or could listen on is
+     *  not trusted, and Main runs here instead. */
+    public static void main(String... args) {
+        SocketChannel channel;
+        try {
+            Path socket = Daemon.socketPath();
+            Daemon.checkPrivate(socket);
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | UnsupportedOperationException
+                 | EnigmaException excp) {
+            Main.main(args);
+            return;
+        }
+        int code;
+        try {
+            code = run(channel, args);
+        } catch (IOException excp) {
+            System.err.printf("Error: lost connection to daemon: %s%n",
+                              excp.getMessage());
+            code = 1;
+        }
+        System.out.flush();
+        System.err.flush();
+        System.exit(code);
+    }
+
+    /** Have the daemon connected to CHANNEL process ARGS, returning the
+     *  exit code. */
+    private static int run(SocketChannel channel, String[] args)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(
+                new Daemon.ChannelOutputStream(channel)));
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new Daemon.ChannelInputStream(channel)));
+        out.writeInt(Daemon.VERSION);
+        out.writeUTF(System.getProperty("user.dir"));
+        out.writeBoolean(System.console() != null);
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        if (readsStandardInput(args)) {
+            out.flush();
+            Thread copier = new Thread(() -> copyInput(System.in, out),
+                                       "enigma-client-input");
+            copier.setDaemon(true);
+            copier.start();
+        } else {
+            out.writeInt(0);
+            out.flush();
+        }
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int kind = in.readByte();
+            if (kind == Daemon.EXIT_FRAME) {
+                return in.readInt();
+            }
+            PrintStream dest = kind == Daemon.ERROR_FRAME ? System.err
+                : System.out;
+            for (int len = in.readInt(); len > 0; ) {
+                int n = in.read(buf, 0, Math.min(len, buf.length));
+                if (n == -1) {
+                    throw new IOException("daemon closed connection");
+                }
+                dest.write(buf, 0, n);
+                len -= n;
+            }
+            if (kind == Daemon.ERROR_FRAME) {
+                dest.flush();
+            }
+        }
+    }
+
+    /** Return true iff Main, given ARGS, would read its standard input:
+     *  that is, iff there is just one argument other than options. */
+    private static boolean readsStandardInput(String[] args) {
+        int files = 0;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                files += 1;
+            }
+        }
+        return files == 1;
+    }
+
+    /** Copy IN to OUT as frames, ending with an empty frame. */
+    private static void copyInput(InputStream in, DataOutputStream out) {
+        byte[] buf = new byte[BUFFER_SIZE];
+        try {
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                if (n > 0) {
+                    out.writeInt(n);
+                    out.write(buf, 0, n);
+                    out.flush();
+                }
+            }
+            out.writeInt(0);
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Size of the buffers used to copy data. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
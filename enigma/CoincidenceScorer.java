@@ -0,0 +1,57 @@
+package enigma;
+
+/** Scores text by its index of coincidence: the chance that two letters
+ *  drawn from different places in it are the same.  Plaintext, whose
+ *  letter frequencies are uneven, scores well above text in which every
+ *  letter is equally likely, which scores about 1 / (alphabet size).  The
+ *  score needs no knowledge of the language, but says nothing about the
+ *  order of the letters.
+ *  @author Chris Jereza
+ */
+class CoincidenceScorer implements Fitness {
+
+    /** A scorer for text in an alphabet of SIZE characters. */
+    CoincidenceScorer(int size) {
+        _counts = new int[size];
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        return indexOfCoincidence(text, len, _counts);
+    }
+
+    @Override
+    public CoincidenceScorer copy() {
+        return new CoincidenceScorer(_counts.length);
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LEN - 1], using
+     *  COUNTS, which must have an element for each index in its
+     *  alphabet, to count them.  Returns 0 if LEN < 2. */
+    static double indexOfCoincidence(int[] text, int len, int[] counts) {
+        return indexOfCoincidence(text, 0, len, counts);
+    }
+
+    /** Return the index of coincidence of TEXT[OFF .. OFF + LEN - 1],
+     *  counting as for indexOfCoincidence(TEXT, LEN, COUNTS). */
+    static double indexOfCoincidence(int[] text, int off, int len,
+                                     int[] counts) {
+        if (len < 2) {
+            return 0.0;
+        }
+        for (int c = 0; c < counts.length; c += 1) {
+            counts[c] = 0;
+        }
+        for (int i = off; i < off + len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int c = 0; c < counts.length; c += 1) {
+            pairs += (long) counts[c] * (counts[c] - 1);
+        }
+        return (double) pairs / ((long) len * (len - 1));
+    }
+
+    /** Number of occurrences of each index in the text last scored. */
+    private final int[] _counts;
+}
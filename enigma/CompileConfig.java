@@ -0,0 +1,30 @@
+package enigma;
+
+import java.io.File;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles a configuration file into a compiled configuration file (see
+ *  MappedRotorLibrary), which Main accepts in place of the configuration
+ *  file, and which it maps rather than parses.
+ *  @author Chris Jereza
+ */
+public final class CompileConfig {
+
+    /** Compile the configuration file named ARGS[0] into the file named
+     *  ARGS[1].  Exits normally if there are no errors in the
+     *  configuration; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.CompileConfig CONFIG OUTPUT");
+            }
+            MappedRotorLibrary.write(Main.loadConfig(args[0]),
+                                     new File(args[1]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.File;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles n-gram statistics into an n-gram file (see NgramScorer),
+ *  which the key search maps to score its trial decryptions.
+ *  @author Chris Jereza
+ */
+public final class CompileNgrams {
+
+    /** Compile the n-gram counts in the file named ARGS[1] into an n-gram
+     *  file named ARGS[2] for the alphabet of the configuration file
+     *  ARGS[0].  Each line of the counts file holds an n-gram and the
+     *  number of times it was seen, separated by whitespace, as in
+     *  published n-gram tables; all its n-grams must be of the same
+     *  length.  With the option --order=K before the other arguments,
+     *  ARGS[1] is instead sample text, whose K-grams are counted, skipping
+     *  characters that are not in the alphabet.  Letters are upper-cased.
+     *  Exits normally if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            int order = 0;
+            if (args.length == 4 && args[0].startsWith("--order=")) {
+                try {
+                    order = Integer.parseInt(args[0].substring(
+                                                 "--order=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad option value: %s", args[0]);
+                }
+                String[] rest = new String[3];
+                System.arraycopy(args, 1, rest, 0, 3);
+                args = rest;
+            } else if (args.length != 3) {
+                throw error("Usage: java enigma.CompileNgrams [--order=K] "
+                            + "CONFIG COUNTS OUTPUT");
+            }
+            Alphabet alpha = Main.loadConfig(args[0]).alphabet();
+            String text = KeySearch.readFile(args[1]);
+            NgramScorer scorer = order > 0 ? fromText(alpha, order, text)
+                : fromCounts(alpha, text);
+            scorer.write(new File(args[2]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return a scorer for the ORDER-grams of ALPHA in TEXT, skipping
+     *  characters not in ALPHA. */
+    static NgramScorer fromText(Alphabet alpha, int order, String text) {
+        int[] indices = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = Character.toUpperCase(text.charAt(i));
+            if (alpha.contains(c)) {
+                indices[len] = alpha.toInt(c);
+                len += 1;
+            }
+        }
+        return NgramScorer.fromText(alpha, order, indices, len);
+    }
+
+    /** Return a scorer for the n-grams of ALPHA counted in COUNTS, lines
+     *  of n-grams and counts. */
+    static NgramScorer fromCounts(Alphabet alpha, String counts) {
+        long[] table = null;
+        int order = 0, lineNum = 0;
+        for (String line : counts.split("\\R")) {
+            lineNum += 1;
+            String[] words = line.trim().split("\\s+");
+            if (words.length == 1 && words[0].isEmpty()) {
+                continue;
+            }
+            if (words.length != 2 || order != 0
+                && words[0].length() != order) {
+                throw error("bad n-gram line %d: %s", lineNum, line);
+            }
+            if (table == null) {
+                order = words[0].length();
+                table = new long[NgramScorer.tableSize(alpha.size(),
+                                                       order)];
+            }
+            int index = 0;
+            for (int k = 0; k < order; k += 1) {
+                char c = Character.toUpperCase(words[0].charAt(k));
+                if (!alpha.contains(c)) {
+                    throw error("bad n-gram line %d: %s", lineNum, line);
+                }
+                index = index * alpha.size() + alpha.toInt(c);
+            }
+            try {
+                table[index] += Long.parseLong(words[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram line %d: %s", lineNum, line);
+            }
+        }
+        if (table == null) {
+            throw error("no n-grams counted");
+        }
+        return NgramScorer.fromCounts(alpha, order, table);
+    }
+}
@@ -0,0 +1,78 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/** A cache of parsed configuration files, for processes that read the
+ *  same configurations again and again.  An entry is used only while its
+ *  file keeps the size and modification time it had when parsed; a file
+ *  that changes is parsed again.  Any number of threads may share one.
+ *  @author Chris Jereza
+ */
+class ConfigCache {
+
+    /** Return the machine described by FILE, which PARSE parses if it
+     *  has not been parsed since it last changed.  Threads asking for the
+     *  same file at once wait for a single parse. */
+    MachineSpec get(File file, Supplier<MachineSpec> parse) {
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException excp) {
+            return parse.get();
+        }
+        long modified = file.lastModified(), size = file.length();
+        Entry entry = _entries.get(key);
+        if (entry == null || entry.modified != modified
+            || entry.size != size) {
+            entry = _entries.compute(key, (name, old) -> {
+                if (old != null && old.modified == modified
+                    && old.size == size) {
+                    return old;
+                }
+                return new Entry(modified, size, parse.get());
+            });
+            if (entry.parsed.compareAndSet(false, true)) {
+                return entry.spec;
+            }
+        }
+        _hits.incrementAndGet();
+        return entry.spec;
+    }
+
+    /** Return the number of requests satisfied from the cache. */
+    long hits() {
+        return _hits.get();
+    }
+
+    /** A parsed configuration and the state of its file when parsed. */
+    private static class Entry {
+        /** An entry for SPEC, parsed from a file of SIZE bytes last
+         *  modified at MODIFIED. */
+        Entry(long modified, long size, MachineSpec spec) {
+            this.modified = modified;
+            this.size = size;
+            this.spec = spec;
+        }
+
+        /** Modification time of the file. */
+        private final long modified;
+        /** Size of the file. */
+        private final long size;
+        /** The machine the file describes. */
+        private final MachineSpec spec;
+        /** Set by the first request for this entry, which parsed it. */
+        private final AtomicBoolean parsed = new AtomicBoolean();
+    }
+
+    /** Entries by canonical file name. */
+    private final ConcurrentHashMap<String, Entry> _entries =
+        new ConcurrentHashMap<>();
+
+    /** Number of requests satisfied from the cache. */
+    private final AtomicLong _hits = new AtomicLong();
+}
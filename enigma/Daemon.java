@@ -0,0 +1,404 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+
+import static enigma.EnigmaException.*;
+
+/** A resident process that runs Main on behalf of Client, so that each
+ *  run is spared starting a JVM, warming up its compiler and parsing its
+ *  configuration file.  The daemon listens on a Unix domain socket and
+ *  serves each connection on a thread of its own.
+ *
+ *  On each connection, the client sends its working directory, whether
+ *  it is on a terminal, its arguments, and then its standard input as
+ *  a series of frames (see Client).  The daemon runs Main with them and
+ *  sends back frames of standard output and error output, ending with
+ *  the exit code.  Parsed configuration files are kept in a ConfigCache
+ *  shared by all runs.
+ *  @author Chris Jereza
+ */
+public final class Daemon {
+
+    /** Listen on the socket named ARGS[0], if given, and otherwise on
+     *  the one given by socketPath(), and run Main for each client that
+     *  connects, until killed. */
+    public static void main(String... args) {
+        try {
+            if (args.length > 1) {
+                throw error("Usage: java enigma.Daemon [SOCKET]");
+            }
+            Path socket;
+            if (args.length > 0) {
+                socket = Paths.get(args[0]);
+            } else {
+                socket = socketPath();
+                createPrivateDirectory(socket.getParent());
+            }
+            new Daemon(socket).serve();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the path of the daemon's socket: the value of the system
+     *  property enigma.socket or the environment variable ENIGMA_SOCKET,
+     *  if either is set, and otherwise daemon.sock in a directory of the
+     *  temporary directory named for the user. */
+    static Path socketPath() {
+        String path = System.getProperty("enigma.socket");
+        if (path == null) {
+            path = System.getenv("ENIGMA_SOCKET");
+        }
+        if (path == null) {
+            path = new File(new File(System.getProperty("java.io.tmpdir"),
+                                     "enigma-"
+                                     + System.getProperty("user.name")),
+                            "daemon.sock").getPath();
+        }
+        return Paths.get(path).toAbsolutePath();
+    }
+
+    /** Create DIR, if it does not exist, readable only by its owner. */
+    static void createPrivateDirectory(Path dir) {
+        if (Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try {
+            if (posix(dir) == null) {
+                Files.createDirectory(dir);
+            } else {
+                Files.createDirectory(
+                    dir, PosixFilePermissions.asFileAttribute(
+                        PosixFilePermissions.fromString("rwx------")));
+            }
+        } catch (IOException excp) {
+            throw error("could not create %s: %s", dir, excp.getMessage());
+        }
+    }
+
+    /** Check that no one but the current user can reach or replace
+     *  SOCKET: that the directory holding it is a real directory owned by
+     *  the user and closed to everyone else, and that SOCKET, if it
+     *  exists, is owned by the user. */
+    static void checkPrivate(Path socket) {
+        Path dir = socket.toAbsolutePath().getParent();
+        PosixFileAttributes attrs = attributes(dir);
+        if (attrs == null) {
+            return;
+        }
+        UserPrincipal user = currentUser(dir);
+        if (!attrs.isDirectory() || !attrs.owner().equals(user)) {
+            throw error("%s is not a directory owned by %s", dir,
+                        user.getName());
+        }
+        for (PosixFilePermission perm : attrs.permissions()) {
+            if (!perm.name().startsWith("OWNER_")) {
+                throw error("%s may be used by other users", dir);
+            }
+        }
+        if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)
+            && !attributes(socket).owner().equals(user)) {
+            throw error("%s is not owned by %s", socket, user.getName());
+        }
+    }
+
+    /** Return the POSIX attributes of FILE, not following links, or null
+     *  if its file system does not have them. */
+    private static PosixFileAttributes attributes(Path file) {
+        PosixFileAttributeView view = posix(file);
+        if (view == null) {
+            return null;
+        }
+        try {
+            return view.readAttributes();
+        } catch (IOException excp) {
+            throw error("could not check %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the POSIX attribute view of FILE, not following links, or
+     *  null if its file system does not have one. */
+    private static PosixFileAttributeView posix(Path file) {
+        return Files.getFileAttributeView(file, PosixFileAttributeView.class,
+                                          LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /** Return the user running me, as known to the file system of
+     *  FILE. */
+    private static UserPrincipal currentUser(Path file) {
+        try {
+            return file.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        } catch (IOException excp) {
+            throw error("could not look up the current user: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** A daemon listening on the Unix domain socket SOCKET, replacing any
+     *  stale socket file left there.  SOCKET must be in a directory only
+     *  the current user may use (see checkPrivate). */
+    Daemon(Path socket) {
+        _socket = socket;
+        checkPrivate(socket);
+        try {
+            Files.deleteIfExists(socket);
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            _server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | UnsupportedOperationException excp) {
+            throw error("could not listen on %s: %s", socket,
+                        excp.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /** Run Main for each connection, on a thread of its own, until I am
+     *  closed. */
+    void serve() {
+        try {
+            while (true) {
+                SocketChannel client = _server.accept();
+                Thread thread = new Thread(() -> serve(client),
+                                           "enigma-daemon");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException excp) {
+            if (_server.isOpen()) {
+                throw error("could not accept connection: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Stop listening and remove my socket file. */
+    void close() {
+        try {
+            _server.close();
+            Files.deleteIfExists(_socket);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return the cache of configurations I have parsed. */
+    ConfigCache configs() {
+        return _configs;
+    }
+
+    /** Run Main for the request sent on CLIENT. */
+    private void serve(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new ChannelInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new ChannelOutputStream(channel)));
+            if (in.readInt() != VERSION) {
+                throw new IOException("protocol version mismatch");
+            }
+            File dir = new File(in.readUTF());
+            boolean terminal = in.readBoolean();
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            PrintStream err =
+                new PrintStream(new FrameOutputStream(out, ERROR_FRAME));
+            int code;
+            try {
+                code = Main.run(args, dir, new FrameInputStream(in),
+                                new FrameOutputStream(out, OUTPUT_FRAME),
+                                err, terminal, _configs);
+            } catch (RuntimeException excp) {
+                excp.printStackTrace(err);
+                code = 1;
+            }
+            err.flush();
+            synchronized (out) {
+                out.writeByte(EXIT_FRAME);
+                out.writeInt(code);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** An input stream reading from a socket channel.  Unlike the streams
+     *  from Channels, it may be read while another thread writes to the
+     *  same channel. */
+    static class ChannelInputStream extends InputStream {
+
+        /** A stream reading from CHANNEL, which must be blocking. */
+        ChannelInputStream(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return _channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        /** The channel read. */
+        private final SocketChannel _channel;
+    }
+
+    /** An output stream writing to a socket channel, which another thread
+     *  may read at the same time. */
+    static class ChannelOutputStream extends OutputStream {
+
+        /** A stream writing to CHANNEL, which must be blocking. */
+        ChannelOutputStream(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) {
+                _channel.write(buf);
+            }
+        }
+
+        /** The channel written. */
+        private final SocketChannel _channel;
+    }
+
+    /** An input stream of the data in the frames read from a stream, up
+     *  to an empty frame. */
+    static class FrameInputStream extends InputStream {
+
+        /** A stream of the frames read from IN. */
+        FrameInputStream(DataInputStream in) {
+            _in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (_remaining == 0 && !_eof) {
+                _remaining = _in.readInt();
+                _eof = _remaining == 0;
+            }
+            if (_eof) {
+                return -1;
+            }
+            int n = _in.read(b, off, Math.min(len, _remaining));
+            if (n == -1) {
+                throw new IOException("client closed connection");
+            }
+            _remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return _eof ? 0 : Math.min(_remaining, _in.available());
+        }
+
+        /** The stream of frames. */
+        private final DataInputStream _in;
+        /** Bytes left in the current frame. */
+        private int _remaining;
+        /** True once the empty frame has been read. */
+        private boolean _eof;
+    }
+
+    /** An output stream that writes its data as frames of one kind. */
+    static class FrameOutputStream extends OutputStream {
+
+        /** A stream writing frames of kind KIND to OUT, with which other
+         *  FrameOutputStreams may share OUT. */
+        FrameOutputStream(DataOutputStream out, int kind) {
+            _out = out;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (_out) {
+                _out.writeByte(_kind);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (_out) {
+                _out.flush();
+            }
+        }
+
+        /** Destination of my frames. */
+        private final DataOutputStream _out;
+        /** The kind of my frames. */
+        private final int _kind;
+    }
+
+    /** Version of the protocol between client and daemon. */
+    static final int VERSION = 1;
+
+    /** Kinds of frames sent by the daemon. */
+    static final int OUTPUT_FRAME = 'O', ERROR_FRAME = 'E', EXIT_FRAME = 'X';
+
+    /** The file of my socket. */
+    private final Path _socket;
+
+    /** The socket on which I accept connections. */
+    private final ServerSocketChannel _server;
+
+    /** Configurations parsed for my clients. */
+    private final ConfigCache _configs = new ConfigCache();
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/** The suite of all JUnit tests for the Daemon class.
+ *  @author Chris Jereza
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "      (RX) (SZ) (TV)\n";
+
+    /** Return the output, error output and exit code of Main, given
+     *  ARGS in directory DIR and INPUT as its standard input, as reported
+     *  through the daemon listening on SOCKET. */
+    private String viaDaemon(Path socket, File dir, String input,
+                             String... args) throws IOException {
+        try (SocketChannel channel =
+             SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    new Daemon.ChannelOutputStream(channel)));
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                    new Daemon.ChannelInputStream(channel)));
+            out.writeInt(Daemon.VERSION);
+            out.writeUTF(dir.getPath());
+            out.writeBoolean(false);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            byte[] bytes = input.getBytes();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeInt(0);
+            out.flush();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream error = new ByteArrayOutputStream();
+            while (true) {
+                int kind = in.readByte();
+                if (kind == Daemon.EXIT_FRAME) {
+                    return result(output, error, in.readInt());
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                (kind == Daemon.ERROR_FRAME ? error : output).write(data);
+            }
+        }
+    }
+
+    /** Return the output, error output and exit code of Main, given
+     *  ARGS in directory DIR and INPUT as its standard input, when run
+     *  in this process. */
+    private String inProcess(File dir, String input, String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int code = Main.run(args, dir,
+                            new java.io.ByteArrayInputStream(
+                                input.getBytes()),
+                            out, new PrintStream(err, true), false, null);
+        return result(out, err, code);
+    }
+
+    /** Return a summary of a run that wrote OUT and ERR and exited with
+     *  CODE. */
+    private String result(ByteArrayOutputStream out,
+                          ByteArrayOutputStream err, int code) {
+        return String.format("out: %s%nerr: %s%nexit %d", out, err, code);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRuns() throws Exception {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File config = new File(dir, "test.conf");
+        Files.write(config.toPath(), CONFIG.getBytes());
+        Path socket = new File(dir, "daemon.sock").toPath();
+        Daemon daemon = new Daemon(socket);
+        Thread server = new Thread(daemon::serve);
+        server.setDaemon(true);
+        server.start();
+        try {
+            String input = "* B BETA III II I AXLE (HQ) (EX)\n"
+                + "FROM HIS SHOULDER HIAWATHA\nTOOK THE CAMERA\n";
+            assertEquals(inProcess(dir, input, "test.conf"),
+                         viaDaemon(socket, dir, input, "test.conf"));
+            assertEquals(inProcess(dir, input, "test.conf"),
+                         viaDaemon(socket, dir, input, "test.conf"));
+            assertEquals(1, daemon.configs().hits());
+            String bad = "* B BETA III II I AXLE\nHELLO.\n";
+            assertEquals(inProcess(dir, bad, "test.conf"),
+                         viaDaemon(socket, dir, bad, "test.conf"));
+            assertTrue(viaDaemon(socket, dir, "", "missing.conf")
+                       .endsWith("exit 1"));
+        } finally {
+            daemon.close();
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void checkModes() throws Exception {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            Files.write(new File(dir, "test.conf").toPath(),
+                        CONFIG.getBytes());
+            StringBuilder input =
+                new StringBuilder("* B BETA III II I AXLE (HQ) (EX)\n");
+            for (int i = 0; i < 5000; i += 1) {
+                input.append((char) ('A' + i % 26));
+            }
+            input.append("\n* B BETA III II I AXLE\nHELLO WORLD\n");
+            String expected = inProcess(dir, input.toString(), "test.conf");
+            assertTrue(expected.endsWith("exit 0"));
+            for (String mode : new String[] { "--blocks", "--pipeline" }) {
+                assertEquals(expected, inProcess(dir, input.toString(),
+                                                 mode, "test.conf"));
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void checkPrivateSocket() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        Path shared = dir.resolve("shared");
+        Path own = dir.resolve("own");
+        try {
+            Files.createDirectory(shared);
+            Files.setPosixFilePermissions(
+                shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+            try {
+                new Daemon(shared.resolve("daemon.sock"));
+                fail("daemon listened in a shared directory");
+            } catch (EnigmaException excp) {
+                assertEquals(shared + " may be used by other users",
+                             excp.getMessage());
+            }
+            Daemon.createPrivateDirectory(own);
+            assertEquals("rwx------", PosixFilePermissions.toString(
+                             Files.getPosixFilePermissions(own)));
+            Daemon.checkPrivate(own.resolve("daemon.sock"));
+        } finally {
+            Files.deleteIfExists(shared);
+            Files.deleteIfExists(own);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
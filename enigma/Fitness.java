@@ -0,0 +1,20 @@
+package enigma;
+
+/** A measure of how much a trial decryption looks like plaintext, for
+ *  searches that try many keys and keep those that score best.  Text is
+ *  given as alphabet indices, as Machine.convert(int) produces them.  A
+ *  scorer may keep working tables of its own, so one that is in use by
+ *  one thread must not be used by another; each thread should score with
+ *  its own copy.
+ *  @author Chris Jereza
+ */
+interface Fitness {
+
+    /** Return the score of the LEN indices TEXT[0 .. LEN - 1]: the
+     *  greater, the more like plaintext.  Allocates nothing. */
+    double score(int[] text, int len);
+
+    /** Return a scorer that scores exactly as I do, and that may be used
+     *  at the same time as I am. */
+    Fitness copy();
+}
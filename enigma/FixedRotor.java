@@ -12,4 +12,14 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** A copy of ORIGINAL with a setting of its own. */
+    FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    @Override
+    FixedRotor copy() {
+        return new FixedRotor(this);
+    }
 }
@@ -0,0 +1,218 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted message lines to an output stream in groups of five
+ *  characters, each group followed by a blank (the last group of a line
+ *  may be shorter), and each line followed by the line separator, exactly
+ *  as PrintStream.println would.  Characters are gathered in a reusable
+ *  buffer and encoded in bulk; output is written when the buffer fills,
+ *  when flushed, and, if so requested, at the end of every line.
+ *  @author Chris Jereza
+ */
+class GroupedWriter {
+
+    /** A writer to OUT encoding in CHARSET that buffers about BUFFERSIZE
+     *  characters, and flushes at the end of each line iff FLUSHLINES. */
+    GroupedWriter(OutputStream out, Charset charset, int bufferSize,
+                  boolean flushLines) {
+        _out = out;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _ascii = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+        _chars = new char[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+        _bytes = ByteBuffer.allocate(
+            (int) Math.ceil(_chars.length * _encoder.maxBytesPerChar()));
+        _flushLines = flushLines;
+    }
+
+    /** A writer to OUT in the default charset with a default buffer size,
+     *  flushing at the end of each line iff FLUSHLINES. */
+    GroupedWriter(OutputStream out, boolean flushLines) {
+        this(out, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, flushLines);
+    }
+
+    /** Write CHARS[OFF .. OFF + N - 1] as a complete line. */
+    void writeLine(char[] chars, int off, int n) {
+        write(chars, off, n);
+        endLine();
+    }
+
+    /** Write CHARS[OFF .. OFF + N - 1] as the next characters of the
+     *  current line. */
+    void write(char[] chars, int off, int n) {
+        for (int i = off; i < off + n; i += 1) {
+            if (_count >= _chars.length - 1) {
+                drain();
+            }
+            _chars[_count] = chars[i];
+            _count += 1;
+            _column += 1;
+            if (_column == GROUP_SIZE) {
+                _chars[_count] = ' ';
+                _count += 1;
+                _column = 0;
+            }
+        }
+    }
+
+    /** End the current line, blanking its last group. */
+    void endLine() {
+        if (_column > 0) {
+            append(' ');
+            _column = 0;
+        }
+        for (int i = 0; i < LINE_END.length(); i += 1) {
+            append(LINE_END.charAt(i));
+        }
+        if (_flushLines) {
+            flush();
+        }
+    }
+
+    /** Write TEXT, which is already formatted, as it is. */
+    void writeFormatted(CharSequence text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            append(text.charAt(i));
+        }
+        if (_flushLines) {
+            flush();
+        }
+    }
+
+    /** Write out everything written to me so far. */
+    void flush() {
+        drain();
+        writeBytes();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Add C to my buffer. */
+    private void append(char c) {
+        if (_count == _chars.length) {
+            drain();
+        }
+        _chars[_count] = c;
+        _count += 1;
+    }
+
+    /** Encode the characters in my buffer into _bytes, writing _bytes
+     *  out whenever it fills. */
+    private void drain() {
+        int i = 0;
+        while (i < _count) {
+            if (_ascii) {
+                int k = _bytes.position(), lim = _bytes.limit();
+                byte[] bytes = _bytes.array();
+                while (i < _count && k < lim && _chars[i] < ASCII_LIMIT) {
+                    bytes[k] = (byte) _chars[i];
+                    i += 1;
+                    k += 1;
+                }
+                _bytes.position(k);
+                if (k == lim) {
+                    writeBytes();
+                    continue;
+                }
+            }
+            int end = i;
+            while (end < _count && !(_ascii && _chars[end] < ASCII_LIMIT)) {
+                end += 1;
+            }
+            if (end > i) {
+                i = encode(i, end);
+                if (i < end) {
+                    break;
+                }
+            }
+        }
+        System.arraycopy(_chars, i, _chars, 0, _count - i);
+        _count -= i;
+    }
+
+    /** Encode _chars[START .. END - 1] into _bytes.  Returns the index of
+     *  the first character not encoded, which is less than END only if
+     *  the range ends in the first half of a surrogate pair. */
+    private int encode(int start, int end) {
+        CharBuffer in = CharBuffer.wrap(_chars, start, end - start);
+        while (true) {
+            CoderResult result = _encoder.encode(in, _bytes, false);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else {
+                return in.position();
+            }
+        }
+    }
+
+    /** Write out the contents of _bytes. */
+    private void writeBytes() {
+        if (_bytes.position() > 0) {
+            try {
+                _out.write(_bytes.array(), 0, _bytes.position());
+            } catch (IOException excp) {
+                throw error("could not write output: %s",
+                            excp.getMessage());
+            }
+            _bytes.clear();
+        }
+    }
+
+    /** Number of characters in a group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Default number of characters buffered. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** Smallest buffer size. */
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    /** Characters below this encode as themselves in an ASCII-compatible
+     *  charset. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Line terminator, as written by PrintStream.println. */
+    private static final String LINE_END = System.lineSeparator();
+
+    /** Destination of my bytes. */
+    private final OutputStream _out;
+
+    /** Encoder for characters that are not simply copied. */
+    private final CharsetEncoder _encoder;
+
+    /** True iff ASCII characters encode as single bytes of the same
+     *  value. */
+    private final boolean _ascii;
+
+    /** Characters written but not yet encoded are _chars[0 .. _count-1]. */
+    private final char[] _chars;
+
+    /** Number of characters in _chars. */
+    private int _count;
+
+    /** Encoded bytes waiting to be written. */
+    private final ByteBuffer _bytes;
+
+    /** Number of characters in the last group of the current line. */
+    private int _column;
+
+    /** True iff output is flushed at the end of each line. */
+    private final boolean _flushLines;
+}
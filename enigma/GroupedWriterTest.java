@@ -0,0 +1,92 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the GroupedWriter class.
+ *  @author Chris Jereza
+ */
+public class GroupedWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LINES as printed in groups of five by PrintStream in
+     *  CHARSET. */
+    private byte[] printed(String[] lines, Charset charset) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false, charset);
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i += 1) {
+                out.print(line.charAt(i));
+                if ((i + 1) % 5 == 0 || i == line.length() - 1) {
+                    out.print(' ');
+                }
+            }
+            out.println();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Return LINES as written by a GroupedWriter in CHARSET with a
+     *  buffer of BUFFERSIZE characters, writing each line in pieces of
+     *  at most PIECE characters. */
+    private byte[] written(String[] lines, Charset charset, int bufferSize,
+                           int piece) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter out =
+            new GroupedWriter(bytes, charset, bufferSize, false);
+        for (String line : lines) {
+            char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i += piece) {
+                out.write(chars, i, Math.min(piece, chars.length - i));
+            }
+            out.endLine();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Check that LINES are written exactly as PrintStream would in
+     *  CHARSET, for a few buffer and piece sizes. */
+    private void checkLines(String[] lines, Charset charset) {
+        byte[] expected = printed(lines, charset);
+        for (int size = 16; size <= 64; size += 16) {
+            for (int piece = 1; piece <= 7; piece += 3) {
+                assertArrayEquals(expected,
+                                  written(lines, charset, size, piece));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroups() {
+        String[] lines = { "", "A", "ABCDE", "ABCDEF",
+                           "QVPQSOKOILPUBKJZPISFXDWBHCNSCXNUOAATZXSRCFY" };
+        checkLines(lines, StandardCharsets.UTF_8);
+        checkLines(lines, StandardCharsets.UTF_16);
+    }
+
+    @Test
+    public void checkNonAscii() {
+        String[] lines = { "\u00C4\u00D6\u00DCABC\u00DFDEFGHIJ",
+                           "\uD83D\uDE00ABCD\uD83D\uDE01\uD83D\uDE02",
+                           "\u4E00\u4E01\u4E02\u4E03\u4E04\u4E05" };
+        checkLines(lines, StandardCharsets.UTF_8);
+        checkLines(lines, StandardCharsets.ISO_8859_1);
+        checkLines(lines, StandardCharsets.UTF_16);
+    }
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+/** A key found by a search, as the settings line that sets a machine up
+ *  with it, and the score of the text it decrypts to.  Candidates order
+ *  best first: by decreasing score, and then by settings line, so that
+ *  searches report ties the same way every time.
+ *  @author Chris Jereza
+ */
+class KeyCandidate implements Comparable<KeyCandidate> {
+
+    /** The key set up by the settings line SETTINGS, whose decryption
+     *  scores SCORE. */
+    KeyCandidate(String settings, double score) {
+        _settings = settings;
+        _score = score;
+    }
+
+    /** Return the settings line that sets a machine up with me. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the score of my decryption. */
+    double score() {
+        return _score;
+    }
+
+    @Override
+    public int compareTo(KeyCandidate other) {
+        int c = Double.compare(other._score, _score);
+        return c != 0 ? c : _settings.compareTo(other._settings);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof KeyCandidate
+            && compareTo((KeyCandidate) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return _settings.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _settings;
+    }
+
+    /** My settings line. */
+    private final String _settings;
+
+    /** The score of my decryption. */
+    private final double _score;
+}
@@ -0,0 +1,750 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the keys of a ciphertext, knowing only the machine that
+ *  encrypted it.  Every rotor order that the configuration allows is
+ *  tried at every start position, with no plugboard, and the positions
+ *  of each order whose trial decryptions score best are kept.  From each
+ *  of those, the plugboard is found by hill climbing: pairs are plugged
+ *  and unplugged one at a time as long as the score improves.  The best
+ *  keys found are reported as settings lines, best first.
+ *
+ *  The start positions of the rotor orders, in blocks, and then the
+ *  climbs are divided among several threads, each with a machine and
+ *  buffers of its own.  Trying a start position converts the
+ *  ciphertext on the thread's machine, and trying a plugboard looks the
+ *  text up in a table of the machine's permutations at each position,
+ *  built once per climb; neither allocates anything.
+ *  @author Chris Jereza
+ */
+public final class KeySearch {
+
+    /** Search for the keys of the ciphertext in ARGS[1] (or on the
+     *  standard input, if there is no ARGS[1]) for the machine in the
+     *  configuration file ARGS[0], printing the best keys found as
+     *  settings lines on the standard output, best first.  Whitespace in
+     *  the ciphertext is ignored, and letters are upper-cased.  Exits
+     *  normally if there are no errors; otherwise with code 1.
+     *
+     *  Options start with "--" and may appear anywhere in ARGS:
+     *    --top=K      Report the best K keys (by default, 10).
+     *    --threads=N  Search on N threads (by default, one per available
+     *                 processor).
+     *    --climbs=N   Climb from the best N start positions of each rotor
+     *                 order (by default, 4).
+     *    --pairs=N    Plug at most N pairs (by default, 10).
+     *    --ngrams=F   Score plugboards by the n-gram statistics in the
+     *                 n-gram file F (see CompileNgrams) rather than by
+     *                 index of coincidence. */
+    public static void main(String... args) {
+        int code = run(args, System.in, System.out, System.err);
+        System.out.flush();
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Search as for main with arguments ARGS, reading the ciphertext
+     *  from IN if ARGS names no file, printing keys on OUT and errors on
+     *  ERR.  Returns the exit code. */
+    static int run(String[] args, InputStream in, PrintStream out,
+                   PrintStream err) {
+        try {
+            ArrayList<String> files = new ArrayList<>();
+            int[] options = parseOptions(args, files);
+            String ngrams = null;
+            for (String arg : args) {
+                if (arg.startsWith("--ngrams=")) {
+                    if (ngrams != null) {
+                        throw error("only one --ngrams option allowed");
+                    }
+                    ngrams = arg.substring("--ngrams=".length());
+                }
+            }
+            if (files.size() < 1 || files.size() > 2) {
+                throw error("Usage: java enigma.KeySearch [--top=K] "
+                            + "[--threads=N] [--climbs=N] [--pairs=N] "
+                            + "[--ngrams=F] CONFIG [INPUT]");
+            }
+            MachineSpec spec = Main.loadConfig(files.get(0));
+            String text = files.size() > 1 ? readFile(files.get(1))
+                : readStream(in);
+            KeySearch search =
+                new KeySearch(spec, ciphertext(text, spec.alphabet()),
+                              new CoincidenceScorer(spec.alphabet().size()));
+            search.setTop(options[TOP]);
+            search.setThreads(options[THREADS]);
+            search.setClimbs(options[CLIMBS]);
+            search.setPairs(options[PAIRS]);
+            if (ngrams != null) {
+                search.setClimbFitness(
+                    NgramScorer.load(new File(ngrams), spec.alphabet()));
+            }
+            for (KeyCandidate key : search.search()) {
+                out.println(key.settings());
+            }
+            return 0;
+        } catch (EnigmaException excp) {
+            err.printf("Error: %s%n", excp.getMessage());
+        }
+        return 1;
+    }
+
+    /** Return the values of the options TOP, THREADS, CLIMBS and PAIRS
+     *  given in ARGS (or their defaults), adding the arguments that are
+     *  not options to FILES.  The --ngrams option is left to the
+     *  caller. */
+    private static int[] parseOptions(String[] args, List<String> files) {
+        int[] result = { DEFAULT_TOP,
+                         Runtime.getRuntime().availableProcessors(),
+                         DEFAULT_CLIMBS, DEFAULT_PAIRS };
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                files.add(arg);
+                continue;
+            } else if (arg.startsWith("--ngrams=")) {
+                continue;
+            }
+            int k = arg.indexOf('=');
+            String name = k < 0 ? arg : arg.substring(0, k + 1);
+            int option;
+            switch (name) {
+            case "--top=":
+                option = TOP;
+                break;
+            case "--threads=":
+                option = THREADS;
+                break;
+            case "--climbs=":
+                option = CLIMBS;
+                break;
+            case "--pairs=":
+                option = PAIRS;
+                break;
+            default:
+                throw error("unknown option: %s", arg);
+            }
+            try {
+                result[option] = Integer.parseInt(arg.substring(k + 1));
+            } catch (NumberFormatException excp) {
+                throw error("bad option value: %s", arg);
+            }
+        }
+        return result;
+    }
+
+    /** Return the contents of the file named NAME. */
+    static String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(new File(name).toPath()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the contents of IN. */
+    static String readStream(InputStream in) {
+        try {
+            return new String(in.readAllBytes());
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Return the characters of TEXT, ignoring whitespace and upper-cased
+     *  as Machine.convert(String) would, as indices in ALPHA. */
+    static int[] ciphertext(CharSequence text, Alphabet alpha) {
+        int[] result = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Machine.isWhitespace(c)) {
+                c = Character.toUpperCase(c);
+                if (!alpha.contains(c)) {
+                    throw error("Character %c not in alphabet.", c);
+                }
+                result[len] = alpha.toInt(c);
+                len += 1;
+            }
+        }
+        int[] trimmed = new int[len];
+        System.arraycopy(result, 0, trimmed, 0, len);
+        return trimmed;
+    }
+
+    /** A search for the keys of CIPHERTEXT, given as indices in the
+     *  alphabet of SPEC, on machines described by SPEC, scoring trial
+     *  decryptions with copies of FITNESS. */
+    KeySearch(MachineSpec spec, int[] ciphertext, Fitness fitness) {
+        if (ciphertext.length < 2) {
+            throw error("ciphertext too short to search");
+        }
+        _spec = spec;
+        _ciphertext = ciphertext;
+        _fitness = _climbFitness = fitness;
+        _orders = rotorOrders(spec.newMachine().getAllRotors(),
+                              spec.numRotors(), spec.numPawls());
+        _positions = positions(spec);
+    }
+
+    /** Return the number of start positions of each rotor order of a
+     *  machine described by SPEC. */
+    static long positions(MachineSpec spec) {
+        long result = 1;
+        int size = spec.alphabet().size();
+        for (int i = 1; i < spec.numRotors(); i += 1) {
+            if (result > Long.MAX_VALUE / size) {
+                throw error("too many rotor positions to search");
+            }
+            result *= size;
+        }
+        return result;
+    }
+
+    /** Return the settings line for the rotors named ORDER started at
+     *  START[1 ..] (as indices in ALPHA) with the plugboard PARTNERS: the
+     *  character plugged to each character. */
+    static String settingsLine(Alphabet alpha, String[] order, int[] start,
+                               int[] partners) {
+        StringBuilder result = new StringBuilder("*");
+        for (String name : order) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        for (int i = 1; i < start.length; i += 1) {
+            result.append(alpha.toChar(start[i]));
+        }
+        for (int c = 0; c < partners.length; c += 1) {
+            if (partners[c] > c) {
+                result.append(" (").append(alpha.toChar(c))
+                    .append(alpha.toChar(partners[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the rotor orders allowed by a machine with NUMROTORS slots
+     *  and PAWLS pawls, whose available rotors are ROTORS: each a list of
+     *  names of rotors that insertRotors accepts. */
+    static List<String[]> rotorOrders(Collection<Rotor> rotors,
+                                      int numRotors, int pawls) {
+        LinkedHashSet<String> reflectors = new LinkedHashSet<>(),
+            fixed = new LinkedHashSet<>(), moving = new LinkedHashSet<>();
+        for (Rotor r : rotors) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        ArrayList<String[]> result = new ArrayList<>();
+        String[] order = new String[numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(result, order, 1, numRotors - pawls,
+                      new ArrayList<>(fixed), new ArrayList<>(moving));
+        }
+        return result;
+    }
+
+    /** Add to RESULT each completion of ORDER, whose slots before I are
+     *  filled, that puts distinct rotors from FIXED in the slots before
+     *  MOVINGSLOT and distinct rotors from MOVING in the rest. */
+    private static void addOrders(List<String[]> result, String[] order,
+                                  int i, int movingSlot,
+                                  List<String> fixed, List<String> moving) {
+        if (i == order.length) {
+            if (result.size() == Integer.MAX_VALUE - 1) {
+                throw error("too many rotor orders to search");
+            }
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = i < movingSlot ? fixed : moving;
+        for (int k = 0; k < choices.size(); k += 1) {
+            String name = choices.get(k);
+            if (name == null) {
+                continue;
+            }
+            order[i] = name;
+            choices.set(k, null);
+            addOrders(result, order, i + 1, movingSlot, fixed, moving);
+            choices.set(k, name);
+        }
+    }
+
+    /** Score trial plugboards with copies of FITNESS, rather than with
+     *  the scorer that scores start positions. */
+    void setClimbFitness(Fitness fitness) {
+        _climbFitness = fitness;
+    }
+
+    /** Report the best K keys. */
+    void setTop(int k) {
+        if (k < 1) {
+            throw error("must report at least one key");
+        }
+        _top = k;
+    }
+
+    /** Search on N threads. */
+    void setThreads(int n) {
+        if (n < 1) {
+            throw error("must search on at least one thread");
+        }
+        _threads = n;
+    }
+
+    /** Climb from the best N start positions of each rotor order. */
+    void setClimbs(int n) {
+        if (n < 1) {
+            throw error("must climb from at least one position");
+        }
+        _climbs = n;
+    }
+
+    /** Plug at most N pairs. */
+    void setPairs(int n) {
+        if (n < 0) {
+            throw error("bad number of plugboard pairs: %d", n);
+        }
+        _pairs = Math.min(n, _spec.alphabet().size() / 2);
+    }
+
+    /** Return the rotor orders searched, each a list of rotor names in
+     *  slot order.  They must not be changed. */
+    List<String[]> orders() {
+        return _orders;
+    }
+
+    /** Return the number of start positions searched for each order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of decryptions tried so far, counting those of
+     *  each block of start positions only once it is done. */
+    long trials() {
+        return _trials.get();
+    }
+
+    /** Search all rotor orders, returning the best keys, best first. */
+    List<KeyCandidate> search() {
+        return search(0, _orders.size());
+    }
+
+    /** Search the rotor orders numbered FROM through TO - 1 in orders(),
+     *  returning the best keys, best first.  First, the start positions
+     *  of every order, divided into blocks so that there is work for
+     *  every thread even when there are few orders, are tried with no
+     *  plugboard, and the best of each order are kept.  Then the threads
+     *  climb from all the positions kept. */
+    List<KeyCandidate> search(int from, int to) {
+        if (from < 0 || to > _orders.size() || from > to) {
+            throw error("bad range of rotor orders: %d to %d", from, to);
+        }
+        int orders = to - from;
+        int blocks = blocks(_positions, orders, _threads);
+        long blockSize = (_positions + blocks - 1) / blocks;
+        Kept[] kept = new Kept[orders];
+        for (int k = 0; k < orders; k += 1) {
+            kept[k] = new Kept(_climbs);
+        }
+        Worker[] workers = new Worker[_threads];
+        for (int t = 0; t < _threads; t += 1) {
+            workers[t] = new Worker();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            AtomicLong nextBlock = new AtomicLong();
+            runAll(pool, workers, w ->
+                   w.scan(nextBlock, (long) orders * blocks, from, blocks,
+                          blockSize, kept));
+            AtomicLong nextClimb = new AtomicLong();
+            runAll(pool, workers, w ->
+                   w.climb(nextClimb, (long) orders * _climbs, from, kept));
+        } finally {
+            pool.shutdownNow();
+        }
+        TopKeys best = new TopKeys(_top);
+        for (Worker w : workers) {
+            best.addAll(w._keys.list());
+        }
+        return best.list();
+    }
+
+    /** Return the number of blocks into which to divide the POSITIONS
+     *  start positions of each of ORDERS rotor orders, so that THREADS
+     *  threads each have several blocks to search. */
+    static int blocks(long positions, int orders, int threads) {
+        long wanted = ((long) UNITS_PER_THREAD * threads + orders - 1)
+            / Math.max(orders, 1);
+        return (int) Math.min(positions, Math.max(1, wanted));
+    }
+
+    /** Run PHASE on each of WORKERS, each on a thread of POOL, returning
+     *  when all are done. */
+    private static void runAll(ExecutorService pool, Worker[] workers,
+                               Consumer<Worker> phase) {
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for (Worker w : workers) {
+            results.add(pool.submit(() -> phase.accept(w)));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause());
+        }
+    }
+
+    /** The best start positions of one rotor order found so far, best
+     *  first among equal scores being the lowest numbered, so that what
+     *  is kept does not depend on how the positions were divided. */
+    private static class Kept {
+
+        /** A collection keeping the best CAPACITY positions. */
+        Kept(int capacity) {
+            _scores = new double[capacity];
+            _positions = new long[capacity];
+        }
+
+        /** Remove all positions. */
+        void clear() {
+            _count = 0;
+        }
+
+        /** Keep start position POSITION, whose decryption scored SCORE,
+         *  if it is among the best positions so far. */
+        void keep(long position, double score) {
+            int slot = _count;
+            if (_count == _scores.length) {
+                slot = 0;
+                for (int i = 1; i < _count; i += 1) {
+                    if (better(_scores[slot], _positions[slot],
+                                _scores[i], _positions[i])) {
+                        slot = i;
+                    }
+                }
+                if (!better(score, position,
+                            _scores[slot], _positions[slot])) {
+                    return;
+                }
+            } else {
+                _count += 1;
+            }
+            _scores[slot] = score;
+            _positions[slot] = position;
+        }
+
+        /** Keep the best of my positions and those of OTHER. */
+        synchronized void merge(Kept other) {
+            for (int i = 0; i < other._count; i += 1) {
+                keep(other._positions[i], other._scores[i]);
+            }
+        }
+
+        /** Return true iff position P0, scoring S0, is better than P1,
+         *  scoring S1. */
+        private static boolean better(double s0, long p0, double s1,
+                                      long p1) {
+            return s0 > s1 || (s0 == s1 && p0 < p1);
+        }
+
+        /** Scores of the positions kept. */
+        private final double[] _scores;
+
+        /** Numbers of the positions kept. */
+        private final long[] _positions;
+
+        /** Number of positions kept. */
+        private int _count;
+    }
+
+    /** One thread of a search, with a machine and buffers of its own. */
+    private class Worker {
+
+        /** A worker for this search. */
+        Worker() {
+            int len = _ciphertext.length, size = _spec.alphabet().size();
+            _machine = _spec.newMachine();
+            _score = _fitness.copy();
+            _climbScore = _climbFitness.copy();
+            _start = new int[_spec.numRotors()];
+            _text = new int[len];
+            _table = new int[len * size];
+            _plugs = new int[size];
+            _kept = new Kept(_climbs);
+            _keys = new TopKeys(_top);
+        }
+
+        /** Try the start positions of block after block numbered from
+         *  NEXT, which I advance, up to LIMIT - 1, with no plugboard.
+         *  Block B is positions (B % BLOCKS) * SIZE onward, up to SIZE of
+         *  them, of rotor order FROM + B / BLOCKS, whose best positions
+         *  are merged into KEPT[B / BLOCKS]. */
+        void scan(AtomicLong next, long limit, int from, int blocks,
+                  long size, Kept[] kept) {
+            int current = -1;
+            for (long b = next.getAndIncrement(); b < limit;
+                 b = next.getAndIncrement()) {
+                int k = (int) (b / blocks);
+                if (k != current) {
+                    _machine.insertRotors(_orders.get(from + k));
+                    current = k;
+                }
+                long first = (b % blocks) * size;
+                long last = Math.min(first + size, _positions);
+                _kept.clear();
+                searchPositions(first, last);
+                kept[k].merge(_kept);
+                _trials.addAndGet(last - first);
+            }
+        }
+
+        /** Climb from kept start position after kept start position
+         *  numbered from NEXT, which I advance, up to LIMIT - 1, adding
+         *  the keys found to _keys.  Number C is the (C % _climbs)th
+         *  position in KEPT[C / _climbs], of rotor order FROM + C /
+         *  _climbs. */
+        void climb(AtomicLong next, long limit, int from, Kept[] kept) {
+            int current = -1;
+            for (long c = next.getAndIncrement(); c < limit;
+                 c = next.getAndIncrement()) {
+                int k = (int) (c / _climbs), i = (int) (c % _climbs);
+                if (i >= kept[k]._count) {
+                    continue;
+                }
+                if (k != current) {
+                    _machine.insertRotors(_orders.get(from + k));
+                    current = k;
+                }
+                setStart(kept[k]._positions[i]);
+                double score = climb();
+                if (_keys.accepts(score)) {
+                    _keys.add(new KeyCandidate(
+                                  settingsLine(_spec.alphabet(),
+                                               _orders.get(from + k),
+                                               _start, _plugs),
+                                  score));
+                }
+            }
+        }
+
+        /** Try start positions FIRST through LAST - 1 of the rotors in my
+         *  machine with no plugboard, keeping the best in _kept. */
+        private void searchPositions(long first, long last) {
+            int len = _ciphertext.length, size = _spec.alphabet().size();
+            setStart(first);
+            for (long p = first; p < last; p += 1) {
+                _machine.setRotors(_start);
+                for (int i = 0; i < len; i += 1) {
+                    _text[i] = _machine.convert(_ciphertext[i]);
+                }
+                _kept.keep(p, _score.score(_text, len));
+                for (int i = _start.length - 1; i > 0; i -= 1) {
+                    _start[i] += 1;
+                    if (_start[i] < size) {
+                        break;
+                    }
+                    _start[i] = 0;
+                }
+            }
+        }
+
+        /** Set _start to start position number POSITION. */
+        private void setStart(long position) {
+            int size = _spec.alphabet().size();
+            for (int i = _start.length - 1; i > 0; i -= 1) {
+                _start[i] = (int) (position % size);
+                position /= size;
+            }
+        }
+
+        /** Find a plugboard for my machine's rotors started at _start by
+         *  hill climbing, leaving it in _plugs.  Returns its score. */
+        private double climb() {
+            int len = _ciphertext.length, size = _plugs.length;
+            _machine.setRotors(_start);
+            for (int i = 0; i < len; i += 1) {
+                _machine.nextPermutation(_table, i * size);
+            }
+            for (int c = 0; c < size; c += 1) {
+                _plugs[c] = c;
+            }
+            int pairs = 0;
+            long trials = 0;
+            double best = score();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < size; a += 1) {
+                    for (int b = a + 1; b < size; b += 1) {
+                        int oldA = _plugs[a], oldB = _plugs[b];
+                        if (oldA == b) {
+                            continue;
+                        }
+                        int added = 1 - (oldA != a ? 1 : 0)
+                            - (oldB != b ? 1 : 0);
+                        if (pairs + added > _pairs) {
+                            continue;
+                        }
+                        unplug(a);
+                        unplug(b);
+                        plug(a, b);
+                        double score = score();
+                        trials += 1;
+                        if (score > best) {
+                            best = score;
+                            pairs += added;
+                            improved = true;
+                        } else {
+                            unplug(a);
+                            plug(a, oldA);
+                            plug(b, oldB);
+                        }
+                    }
+                    if (_plugs[a] != a) {
+                        int old = _plugs[a];
+                        unplug(a);
+                        double score = score();
+                        trials += 1;
+                        if (score > best) {
+                            best = score;
+                            pairs -= 1;
+                            improved = true;
+                        } else {
+                            plug(a, old);
+                        }
+                    }
+                }
+            }
+            _trials.addAndGet(trials);
+            return best;
+        }
+
+        /** Unplug C and the character plugged to it, if any. */
+        private void unplug(int c) {
+            _plugs[_plugs[c]] = _plugs[c];
+            _plugs[c] = c;
+        }
+
+        /** Plug A to B (nothing, if they are the same). */
+        private void plug(int a, int b) {
+            _plugs[a] = b;
+            _plugs[b] = a;
+        }
+
+        /** Return the score of decrypting the ciphertext with the
+         *  permutations in _table and the plugboard in _plugs. */
+        private double score() {
+            int len = _ciphertext.length, size = _plugs.length;
+            for (int i = 0, off = 0; i < len; i += 1, off += size) {
+                _text[i] = _plugs[_table[off + _plugs[_ciphertext[i]]]];
+            }
+            return _climbScore.score(_text, len);
+        }
+
+        /** The machine that tries each key. */
+        private final Machine _machine;
+
+        /** My scorer of start positions. */
+        private final Fitness _score;
+
+        /** My scorer of plugboards. */
+        private final Fitness _climbScore;
+
+        /** Start setting of each slot. */
+        private final int[] _start;
+
+        /** The trial decryption. */
+        private final int[] _text;
+
+        /** The permutation of the rotors at each position of the
+         *  ciphertext, one after another. */
+        private final int[] _table;
+
+        /** The plugboard: the character plugged to each character. */
+        private final int[] _plugs;
+
+        /** The best start positions of the block being searched. */
+        private final Kept _kept;
+
+        /** The best keys I have found. */
+        private final TopKeys _keys;
+    }
+
+    /** Indices of the options in the result of parseOptions. */
+    private static final int TOP = 0, THREADS = 1, CLIMBS = 2, PAIRS = 3;
+
+    /** Default number of keys reported. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Least number of blocks of start positions searched per thread,
+     *  so that threads that finish early find more to do. */
+    private static final int UNITS_PER_THREAD = 4;
+
+    /** Default number of start positions climbed from per rotor order. */
+    private static final int DEFAULT_CLIMBS = 4;
+
+    /** Default greatest number of plugboard pairs. */
+    private static final int DEFAULT_PAIRS = 10;
+
+    /** Description of the machine searched. */
+    private final MachineSpec _spec;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** The scorer of start positions copied by each thread. */
+    private final Fitness _fitness;
+
+    /** The scorer of plugboards copied by each thread. */
+    private Fitness _climbFitness;
+
+    /** The rotor orders searched. */
+    private final List<String[]> _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+    /** Number of decryptions tried so far. */
+    private final AtomicLong _trials = new AtomicLong();
+
+    /** Number of keys reported. */
+    private int _top = DEFAULT_TOP;
+
+    /** Number of threads searching. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Number of start positions climbed from per rotor order. */
+    private int _climbs = DEFAULT_CLIMBS;
+
+    /** Greatest number of plugboard pairs. */
+    private int _pairs = DEFAULT_PAIRS;
+}
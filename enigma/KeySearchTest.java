@@ -0,0 +1,171 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the key search.
+ *  @author Chris Jereza
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A plaintext long enough for its keys to be found. */
+    static final String PLAINTEXT =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDAND"
+        + "PULLEDTHEJOINTSANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGS"
+        + "LIKEACOMPLICATEDFIGUREINTHESECONDBOOKOFEUCLIDTHISHEPERCHED"
+        + "UPONATRIPODEVERYONEASHEDIRECTEDSATUPONTHEBENCHESGAZINGWITH"
+        + "THEIRHANDSANDFACESFOLDEDASTHEYSAIDWHENTHEYWEREREADYTOBE"
+        + "TAKENBYTHEPHOTOGRAPHERANDTHESMALLESTCHILDWASTOOLITTLE";
+
+    /** Return a machine with three slots, two pawls, and a choice of two
+     *  reflectors and three moving rotors. */
+    static MachineSpec smallSpec() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = { "I", "II", "III" };
+        String notches = "QEV";
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                                       new Permutation(NAVALA.get(moving[i]),
+                                                       UPPER),
+                                       notches.substring(i, i + 1)));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"),
+                                                      UPPER)));
+        return new MachineSpec(UPPER, 3, 2, rotors);
+    }
+
+    /** Return TEXT converted by a machine described by SPEC with settings
+     *  SETTINGS. */
+    static String convert(MachineSpec spec, String settings, String text) {
+        Machine machine = spec.newMachine();
+        Main.setUp(machine, settings);
+        return machine.convert(text);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkOrders() {
+        MachineSpec naval = ServiceTest.navalSpec();
+        List<String[]> orders =
+            KeySearch.rotorOrders(naval.rotors(), 5, 3);
+        assertEquals(2 * 2 * 5 * 4 * 3, orders.size());
+        Machine machine = naval.newMachine();
+        for (String[] order : orders) {
+            machine.insertRotors(order);
+        }
+        assertArrayEquals(new String[] { "B", "BETA", "I", "II", "III" },
+                          orders.get(0));
+    }
+
+    @Test
+    public void checkIntSettings() {
+        MachineSpec naval = ServiceTest.navalSpec();
+        Machine byString = naval.newMachine(), byInt = naval.newMachine();
+        Main.setUp(byString, "* B BETA III IV I AXLE");
+        Main.setUp(byInt, "* B BETA III IV I AAAA");
+        byInt.setRotors(new int[] { 0, 0, 23, 11, 4 });
+        int[] table = new int[UPPER.size()];
+        for (int i = 0; i < 100; i += 1) {
+            byInt.nextPermutation(table, 0);
+            for (int x = 0; x < table.length; x += 1) {
+                assertEquals(byString.copy().convert(x), table[x]);
+            }
+            byString.advanceMachine();
+        }
+    }
+
+    @Test
+    public void checkTopKeys() {
+        TopKeys top = new TopKeys(2);
+        assertTrue(top.add(new KeyCandidate("* B I II AA", 1.0)));
+        assertTrue(top.add(new KeyCandidate("* B I II AB", 3.0)));
+        assertFalse(top.add(new KeyCandidate("* B I II AB", 3.0)));
+        assertFalse(top.accepts(0.5));
+        assertTrue(top.add(new KeyCandidate("* B I II AC", 2.0)));
+        assertEquals("[* B I II AB, * B I II AC]", top.list().toString());
+    }
+
+    @Test
+    public void checkSearch() {
+        MachineSpec spec = smallSpec();
+        String key = "* B III I KD (AT) (OS)";
+        String ciphertext = convert(spec, key, PLAINTEXT);
+        KeySearch search =
+            new KeySearch(spec, KeySearch.ciphertext(ciphertext, UPPER),
+                          new CoincidenceScorer(UPPER.size()));
+        search.setThreads(2);
+        search.setTop(3);
+        List<KeyCandidate> keys = search.search();
+        assertEquals(3, keys.size());
+        assertEquals(12 * 26 * 26, search.orders().size()
+                     * search.positions());
+        assertTrue(search.trials() > 12 * 26 * 26);
+        String best = keys.get(0).settings();
+        assertTrue(best.startsWith("* B III I KD "));
+        assertTrue(best.contains("(AT)") && best.contains("(OS)"));
+        assertEquals(CoincidenceScorer.indexOfCoincidence(
+                         KeySearch.ciphertext(convert(spec, best,
+                                                      ciphertext), UPPER),
+                         PLAINTEXT.length(), new int[UPPER.size()]),
+                     keys.get(0).score(), 1e-12);
+    }
+
+    @Test
+    public void checkOneOrder() {
+        MachineSpec spec = smallSpec();
+        String key = "* B III I KD (AT) (OS)";
+        int[] ciphertext =
+            KeySearch.ciphertext(convert(spec, key, PLAINTEXT), UPPER);
+        List<String> results = new ArrayList<>();
+        for (int threads = 1; threads <= 3; threads += 2) {
+            KeySearch search =
+                new KeySearch(spec, ciphertext,
+                              new CoincidenceScorer(UPPER.size()));
+            int k = 0;
+            while (!String.join(" ", search.orders().get(k))
+                   .equals("B III I")) {
+                k += 1;
+            }
+            search.setThreads(threads);
+            search.setTop(3);
+            List<KeyCandidate> keys = search.search(k, k + 1);
+            assertTrue(keys.get(0).settings().startsWith("* B III I KD "));
+            results.add(keys.toString());
+        }
+        assertEquals(results.get(0), results.get(1));
+    }
+
+    @Test
+    public void checkRepeatedNgrams() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+            err = new ByteArrayOutputStream();
+        assertEquals(1, KeySearch.run(new String[] {
+                    "--ngrams=a.ngr", "--ngrams=b.ngr", "test.conf" },
+                InputStream.nullInputStream(), new PrintStream(out),
+                new PrintStream(err)));
+        assertEquals("", out.toString());
+        assertEquals(String.format("Error: only one --ngrams option "
+                                   + "allowed%n"), err.toString());
+    }
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A record of the latencies of requests served concurrently, kept as a
+ *  histogram whose buckets are no more than 1/8 of their lower bound
+ *  wide, so that percentiles are reported to within about 12%.  Any
+ *  number of threads may record into one at once without locking.
+ *  @author Chris Jereza
+ */
+class LatencyStats {
+
+    /** An empty record, whose throughput is measured from now. */
+    LatencyStats() {
+        _start = System.nanoTime();
+    }
+
+    /** Record one request that took NANOS nanoseconds. */
+    void record(long nanos) {
+        _counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+        _count.incrementAndGet();
+        long max = _max.get();
+        while (nanos > max && !_max.compareAndSet(max, nanos)) {
+            max = _max.get();
+        }
+    }
+
+    /** Return the number of requests recorded. */
+    long count() {
+        return _count.get();
+    }
+
+    /** Return the longest latency recorded, in nanoseconds. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return the latency, in nanoseconds, within which the fraction P of
+     *  the recorded requests were served (approximately: the upper bound
+     *  of the bucket holding that request). */
+    long percentile(double p) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i += 1) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return 0;
+    }
+
+    /** Return the number of requests recorded per second since I was
+     *  made. */
+    double throughput() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return seconds <= 0 ? 0 : count() / seconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d rate=%.1f/s p50=%.1fus p90=%.1fus"
+                             + " p99=%.1fus p99.9=%.1fus max=%.1fus",
+                             count(), throughput(), percentile(0.5) / 1e3,
+                             percentile(0.9) / 1e3, percentile(0.99) / 1e3,
+                             percentile(0.999) / 1e3, max() / 1e3);
+    }
+
+    /** Return the bucket for a latency of NANOS >= 0 nanoseconds. */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Return the largest latency falling in bucket B. */
+    private static long upperBound(int b) {
+        if (b < SUB_BUCKETS) {
+            return b;
+        }
+        int magnitude = b / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = b % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (magnitude - SUB_BITS)) - 1;
+    }
+
+    /** Log base 2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 3;
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Number of buckets, enough for any long latency. */
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    /** Number of requests recorded in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of requests recorded. */
+    private final AtomicLong _count = new AtomicLong();
+
+    /** Longest latency recorded. */
+    private final AtomicLong _max = new AtomicLong();
+
+    /** Time at which I was made, as given by System.nanoTime. */
+    private final long _start;
+}
@@ -0,0 +1,178 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A LineSource reading lines of characters from a Reader.
+ *  @author Chris Jereza
+ */
+class LineReader implements LineSource {
+
+    /** A reader of the lines of IN, buffering BUFFERSIZE characters at a
+     *  time. */
+    LineReader(Reader in, int bufferSize) {
+        _in = in;
+        _buf = new char[bufferSize];
+    }
+
+    /** A reader of the lines of IN with a default buffer size. */
+    LineReader(Reader in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public boolean nextLine() {
+        while (_inLine) {
+            skip();
+        }
+        if (!fill()) {
+            return false;
+        }
+        if (_skipLF) {
+            _skipLF = false;
+            if (_buf[_pos] == '\n') {
+                _pos += 1;
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+        _inLine = true;
+        return true;
+    }
+
+    @Override
+    public int read(char[] buf, int off, int len) {
+        int n = 0;
+        while (_inLine && n < len) {
+            if (!fill()) {
+                _inLine = false;
+                break;
+            }
+            int end = Math.min(_limit, _pos + len - n);
+            int p = _pos;
+            while (p < end && !LineSource.isSeparator(_buf[p])) {
+                p += 1;
+            }
+            System.arraycopy(_buf, _pos, buf, off + n, p - _pos);
+            n += p - _pos;
+            _pos = p;
+            if (p < end) {
+                endLine();
+            }
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public void readRest(StringBuilder out) {
+        while (_inLine) {
+            if (!fill()) {
+                _inLine = false;
+                break;
+            }
+            int p = _pos;
+            while (p < _limit && !LineSource.isSeparator(_buf[p])) {
+                p += 1;
+            }
+            out.append(_buf, _pos, p - _pos);
+            _pos = p;
+            if (p < _limit) {
+                endLine();
+            }
+        }
+    }
+
+    @Override
+    public boolean atLineEnd() {
+        if (_inLine && fill() && LineSource.isSeparator(_buf[_pos])) {
+            endLine();
+        } else if (_inLine && _eof && _pos == _limit) {
+            _inLine = false;
+        }
+        return !_inLine;
+    }
+
+    @Override
+    public boolean ready() {
+        try {
+            return _pos < _limit || !_eof && _in.ready();
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            throw error("could not close input");
+        }
+    }
+
+    /** Skip the buffered part of the current line. */
+    private void skip() {
+        if (!fill()) {
+            _inLine = false;
+            return;
+        }
+        while (_pos < _limit && !LineSource.isSeparator(_buf[_pos])) {
+            _pos += 1;
+        }
+        if (_pos < _limit) {
+            endLine();
+        }
+    }
+
+    /** Consume the line separator at _pos, ending the current line. */
+    private void endLine() {
+        _skipLF = _buf[_pos] == '\r';
+        _pos += 1;
+        _inLine = false;
+    }
+
+    /** Make sure that at least one unread character is buffered, if there
+     *  are any left.  Returns false at the end of input. */
+    private boolean fill() {
+        while (_pos == _limit && !_eof) {
+            try {
+                int n = _in.read(_buf, 0, _buf.length);
+                if (n == -1) {
+                    _eof = true;
+                } else {
+                    _pos = 0;
+                    _limit = n;
+                }
+            } catch (IOException excp) {
+                throw error("could not read input: %s", excp.getMessage());
+            }
+        }
+        return _pos < _limit;
+    }
+
+    /** Default number of characters buffered. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** Source of characters. */
+    private final Reader _in;
+
+    /** Characters read from _in but not yet consumed lie in
+     *  _buf[_pos .. _limit - 1]. */
+    private final char[] _buf;
+
+    /** Bounds of the unconsumed characters in _buf. */
+    private int _pos, _limit;
+
+    /** True once _in is exhausted. */
+    private boolean _eof;
+
+    /** True iff a line has been started and not completely read. */
+    private boolean _inLine;
+
+    /** True iff the last separator was '\r', so that an immediately
+     *  following '\n' belongs to it. */
+    private boolean _skipLF;
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the LineReader and MappedLineReader
+ *  classes.
+ *  @author Chris Jereza
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the lines of TEXT as read by a LineReader with a buffer of
+     *  BUFFERSIZE characters, reading at most CHUNK characters at a
+     *  time. */
+    private ArrayList<String> readLines(String text, int bufferSize,
+                                        int chunk) {
+        ArrayList<String> result = new ArrayList<>();
+        LineReader lines = new LineReader(new StringReader(text), bufferSize);
+        char[] buf = new char[chunk];
+        while (lines.nextLine()) {
+            StringBuilder line = new StringBuilder();
+            for (int n = lines.read(buf, 0, chunk); n != -1;
+                 n = lines.read(buf, 0, chunk)) {
+                line.append(buf, 0, n);
+            }
+            result.add(line.toString());
+        }
+        return result;
+    }
+
+    /** Return the lines of TEXT as read by a Scanner. */
+    private ArrayList<String> scanLines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        Scanner lines = new Scanner(text);
+        while (lines.hasNextLine()) {
+            result.add(lines.nextLine());
+        }
+        return result;
+    }
+
+    /** Return the lines of TEXT as read by a MappedLineReader from a
+     *  file in UTF-8, mapping WINDOWSIZE bytes at a time and reading at
+     *  most CHUNK characters at a time. */
+    private ArrayList<String> mapLines(String text, int windowSize,
+                                       int chunk) throws IOException {
+        File file = File.createTempFile("enigma", ".inp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        ArrayList<String> result = new ArrayList<>();
+        MappedLineReader lines =
+            new MappedLineReader(file.getPath(), StandardCharsets.UTF_8,
+                                 windowSize);
+        char[] buf = new char[chunk];
+        while (lines.nextLine()) {
+            StringBuilder line = new StringBuilder();
+            for (int n = lines.read(buf, 0, chunk); n != -1;
+                 n = lines.read(buf, 0, chunk)) {
+                line.append(buf, 0, n);
+            }
+            result.add(line.toString());
+        }
+        lines.close();
+        return result;
+    }
+
+    /** Check that TEXT splits into the same lines as for a Scanner, for
+     *  a few buffer and chunk sizes. */
+    private void checkLines(String text) {
+        for (int size = 1; size <= 4; size += 1) {
+            for (int chunk = 1; chunk <= 3; chunk += 1) {
+                assertEquals(text, scanLines(text),
+                             readLines(text, size, chunk));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSeparators() {
+        checkLines("");
+        checkLines("ABC");
+        checkLines("ABC\n");
+        checkLines("ABC\n\n");
+        checkLines("\n\nAB");
+        checkLines("A\r\nB\rC\n\rD");
+        checkLines("A\r\r\nB\u2028C\u2029D\u0085E");
+    }
+
+    @Test
+    public void checkSkipAndRest() {
+        LineReader lines =
+            new LineReader(new StringReader("* B I\r\nHELLO\r\nWORLD"), 2);
+        assertTrue(lines.nextLine());
+        assertTrue(lines.nextLine());
+        StringBuilder rest = new StringBuilder();
+        lines.readRest(rest);
+        assertEquals("HELLO", rest.toString());
+        assertTrue(lines.atLineEnd());
+        assertTrue(lines.nextLine());
+        assertFalse(lines.atLineEnd());
+        rest.setLength(0);
+        lines.readRest(rest);
+        assertEquals("WORLD", rest.toString());
+        assertFalse(lines.nextLine());
+    }
+
+    @Test
+    public void checkMapped() throws IOException {
+        String text = "* B BETA I II III AAAA (AQ)\r\nHELLO WORLD\r"
+            + "\u00C4\u00D6\u2028\uD83D\uDE00 ABC\u0085\n\nLAST";
+        for (int size = 16; size <= 24; size += 1) {
+            for (int chunk = 1; chunk <= 3; chunk += 1) {
+                assertEquals(scanLines(text), mapLines(text, size, chunk));
+            }
+        }
+    }
+}
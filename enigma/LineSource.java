@@ -0,0 +1,47 @@
+package enigma;
+
+/** A source of lines of text that may be read in pieces, so that a line
+ *  need never be held in memory all at once.  Lines are separated
+ *  exactly as by Scanner.nextLine: by "\r\n" or by any one of '\n',
+ *  '\r', '\u2028', '\u2029' and '\u0085'.  The text after the last
+ *  separator is a line if it is not empty.
+ *  @author Chris Jereza
+ */
+interface LineSource {
+
+    /** Skip the rest of the current line, if any, and start reading the
+     *  next one.  Returns false if there are no more lines. */
+    boolean nextLine();
+
+    /** Read up to LEN characters of the current line into BUF, starting at
+     *  OFF.  Returns the number of characters read, which is positive
+     *  unless LEN is 0, or -1 if the line has been read completely. */
+    int read(char[] buf, int off, int len);
+
+    /** Append the rest of the current line to OUT. */
+    default void readRest(StringBuilder out) {
+        char[] buf = new char[READ_SIZE];
+        for (int n = read(buf, 0, buf.length); n != -1;
+             n = read(buf, 0, buf.length)) {
+            out.append(buf, 0, n);
+        }
+    }
+
+    /** Return true iff the current line has been read completely. */
+    boolean atLineEnd();
+
+    /** Return true iff more input can be read without waiting. */
+    boolean ready();
+
+    /** Release the resources I hold. */
+    void close();
+
+    /** Return true iff C separates lines. */
+    static boolean isSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Size of the pieces in which readRest reads. */
+    int READ_SIZE = 1 << 12;
+}
@@ -1,6 +1,9 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import static enigma.EnigmaException.*;
 
@@ -14,56 +17,92 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        if (pawls > numRotors - 1) {
-            throw new EnigmaException("Invalid number of pawls.");
+        this(new MachineSpec(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine described by SPEC, with empty slots. */
+    Machine(MachineSpec spec) {
+        _spec = spec;
+        _rotors = new Rotor[spec.numRotors()];
+    }
+
+    /** Return a new machine with my rotors, settings, position and
+     *  plugboard, whose rotors are copies of mine and so advance
+     *  independently of them.  The copy does not share my cache. */
+    Machine copy() {
+        Machine result = new Machine(_spec);
+        for (int i = 0; i < _rotors.length; i += 1) {
+            if (_rotors[i] != null) {
+                result._rotors[i] = _rotors[i].copy();
+            }
         }
-        _alphabet = alpha;
-        _numRotors = numRotors;
+        result._plugboard = _plugboard;
+        result._settings = _settings;
+        result._start = _start;
+        result._position = _position;
+        result._split = _split;
+        result._slow = _slow == null ? null : _slow.clone();
+        result._slowValid = _slowValid;
+        return result;
+    }
 
-        _pawls = pawls;
-        _allRotors = allRotors;
-        _rotors = new Rotor[numRotors];
+    /** Return my description. */
+    MachineSpec spec() {
+        return _spec;
     }
 
     /** Return the number of rotor slots I have. */
     int numRotors() {
-        return _numRotors;
+        return _spec.numRotors();
     }
 
     /** Return the number pawls (and thus rotating rotors) I have. */
     int numPawls() {
-        return _pawls;
+        return _spec.numPawls();
     }
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  Each slot gets
+     *  a copy of the named rotor, whose setting is mine alone; a slot
+     *  that already holds a copy of it keeps that copy. */
     void insertRotors(String[] rotors) {
         if (rotors.length != _rotors.length) {
             throw new EnigmaException("Incorrect number of rotors.");
         }
+        int pawls = numPawls();
+        _inserted.clear();
         for (int i = 0; i < rotors.length; i += 1) {
-            Rotor rotorToInsert = getRotor(rotors[i]);
-            for (int x = 0; x < i; x += 1) {
-                if (rotors()[x].name().equals(rotorToInsert.name())) {
-                    throw new EnigmaException("Cannot insert duplicate rotor.");
-                }
+            Rotor rotorToInsert = _spec.rotor(rotors[i]);
+            if (!_inserted.add(rotorToInsert.name())) {
+                throw new EnigmaException("Cannot insert duplicate rotor.");
             }
             if (i == 0) {
                 if (!rotorToInsert.reflecting()) {
                     throw new EnigmaException("Reflector must be in 0 slot.");
                 }
-            } else if (i < rotors.length - _pawls) {
+            } else if (i < rotors.length - pawls) {
                 if (rotorToInsert.rotates()) {
                     throw new EnigmaException("Moving Rotor must have a pawl.");
                 }
-            } else if (i >= rotors.length - _pawls) {
+            } else if (i >= rotors.length - pawls) {
                 if (!rotorToInsert.rotates()) {
                     throw new EnigmaException("Fixed Rotor cannot have pawl.");
                 }
             }
-            _rotors[i] = getRotor(rotors[i]);
+            if (_rotors[i] != null
+                && _rotors[i].name().equals(rotorToInsert.name())) {
+                _rotors[i].set(0);
+            } else {
+                _rotors[i] = rotorToInsert.copy();
+            }
         }
+        _split = _rotors.length - Math.min(pawls, FAST_ROTORS);
+        if (_slow == null) {
+            _slow = new int[alphabet().size()];
+        }
+        _slowValid = false;
+        clearCache();
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
@@ -79,9 +118,151 @@ class Machine {
             throw new EnigmaException("Incorrect number of settings.");
         }
         _settings = setting;
+        _start = new int[_rotors.length];
         for (int i = 1; i < _rotors.length; i += 1) {
             _rotors[i].set(setting.charAt(i - 1));
+            _start[i] = _rotors[i].setting();
+        }
+        _position = 0;
+        _slowValid = false;
+    }
+
+    /** Set my rotors as setRotors(String) would to the settings START[1]
+     *  through START[numRotors() - 1], which must be indices in my
+     *  alphabet.  START is kept rather than copied as the setting to which
+     *  seek returns, so it must not be changed while I might seek.
+     *  Allocates nothing, for callers that try many settings in turn. */
+    void setRotors(int[] start) {
+        for (int i = 1; i < _rotors.length; i += 1) {
+            _rotors[i].set(start[i]);
+        }
+        _settings = null;
+        _start = start;
+        _position = 0;
+        _slowValid = false;
+    }
+
+    /** Return the number of times I have advanced since my rotors were
+     *  last set by setRotors. */
+    long position() {
+        return _position;
+    }
+
+    /** Put my rotors where they would be after advancing POSITION times
+     *  from the setting last given to setRotors, so that the next
+     *  character converted is character number POSITION (numbering from
+     *  0) of the message begun there.  Stretches in which only the
+     *  rightmost rotor moves, whole revolutions of it during which its
+     *  neighbor reaches no notch, and whole periods of the two rightmost
+     *  rotors during which the third reaches no notch are all skipped
+     *  arithmetically, so the cost grows far more slowly than POSITION. */
+    void seek(long position) {
+        if (position < 0) {
+            throw error("cannot seek to negative position %d", position);
+        }
+        if (position < _position) {
+            for (int i = 1; i < _rotors.length; i += 1) {
+                _rotors[i].set(_start[i]);
+            }
+            _position = 0;
+        }
+        skip(position - _position);
+        _position = position;
+        _slowValid = false;
+    }
+
+    /** Advance my rotors STEPS times without converting anything. */
+    private void skip(long steps) {
+        int n = alphabet().size();
+        int last = _rotors.length - 1;
+        Rotor fast = _rotors[last], next = _rotors[last - 1];
+        if (!fast.rotates()) {
+            return;
+        }
+        int triggers = next.rotates() ? fast.notchCount() : 0;
+        boolean nextEngages = last >= 2 && next.rotates()
+            && _rotors[last - 2].rotates() && next.notchCount() > 0;
+        boolean thirdEngages = last >= 3 && _rotors[last - 2].rotates()
+            && _rotors[last - 3].rotates()
+            && _rotors[last - 2].notchCount() > 0;
+        HashMap<Integer, long[]> seen = new HashMap<>();
+        long engagements = 0;
+        while (steps > 0) {
+            if (notchEngaged(last)) {
+                if (engaged(last - 1)) {
+                    long[] prev = seen.put(next.setting() * n + fast.setting(),
+                                           new long[] {steps, engagements});
+                    long skipped = 0;
+                    if (prev != null && !notchEngaged(last - 2)) {
+                        skipped = skipPeriods(prev[0] - steps,
+                                              engagements - prev[1],
+                                              thirdEngages, steps);
+                    }
+                    if (skipped > 0) {
+                        steps -= skipped;
+                        seen.clear();
+                        continue;
+                    }
+                    engagements += 1;
+                }
+                advanceRotors();
+                steps -= 1;
+            } else if (triggers == 0) {
+                fast.set((int) ((fast.setting() + steps) % n));
+                steps = 0;
+            } else if (steps >= n
+                       && (!nextEngages || next.notchDistance() > triggers)) {
+                long turns = steps / n;
+                if (nextEngages) {
+                    turns = Math.min(turns,
+                                     (next.notchDistance() - 1) / triggers);
+                }
+                next.set((int) ((next.setting() + turns * triggers) % n));
+                steps -= turns * n;
+            } else {
+                long run = Math.min(fast.notchDistance(), steps);
+                fast.set((int) ((fast.setting() + run) % n));
+                steps -= run;
+            }
+        }
+    }
+
+    /** Advance the third rotor from the right through as many whole
+     *  periods of the two rightmost rotors as possible, given that they
+     *  last came to their current positions PERIOD advances ago, that it
+     *  moved MOVES times in that period, that THIRDENGAGES iff its own
+     *  notches matter, and that STEPS advances remain.  Returns the
+     *  number of advances skipped.  The two rightmost rotors end where
+     *  they started. */
+    private long skipPeriods(long period, long moves,
+                             boolean thirdEngages, long steps) {
+        Rotor third = _rotors[_rotors.length - 3];
+        long turns = steps / period;
+        if (thirdEngages) {
+            turns = Math.min(turns, (third.notchDistance() - 1) / moves);
+        }
+        int n = alphabet().size();
+        third.set((int) ((third.setting() + turns * moves) % n));
+        return turns * period;
+    }
+
+    /** Return true iff the rotor in slot I is at a notch that will make
+     *  it and its left neighbor move on the next advance. */
+    private boolean engaged(int i) {
+        return i >= 1 && _rotors[i].rotates() && _rotors[i - 1].rotates()
+            && _rotors[i].atNotch();
+    }
+
+    /** Return true iff the rotor in some slot from 1 through LAST is at a
+     *  notch that will make more than the rightmost rotor move on the next
+     *  advance. */
+    private boolean notchEngaged(int last) {
+        for (int i = 1; i <= last; i += 1) {
+            if (engaged(i)) {
+                return true;
+            }
         }
+        return false;
     }
 
     /** Sets all rotors (excluding reflector) to original positions. */
@@ -96,35 +277,164 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        clearCache();
+    }
+
+    /** Return the rotors, start settings and plugboard I was last given
+     *  by insertRotors, setRotors and setPlugboard. */
+    MachineSettings saveSettings() {
+        String[] names = new String[_rotors.length];
+        for (int i = 0; i < _rotors.length; i += 1) {
+            names[i] = _rotors[i].name();
+        }
+        return new MachineSettings(names, _start, _settings, _plugboard);
+    }
+
+    /** Put me in the state that insertRotors, setRotors and setPlugboard
+     *  would, given the settings saved as SETTINGS from a machine with my
+     *  description.  Does no checking, and keeps any of my rotors already
+     *  in the slot SETTINGS gives them. */
+    void restoreSettings(MachineSettings settings) {
+        int[] start = settings.start();
+        for (int i = 0; i < _rotors.length; i += 1) {
+            String name = settings.rotor(i);
+            if (_rotors[i] == null || !_rotors[i].name().equals(name)) {
+                _rotors[i] = _spec.rotor(name).copy();
+            }
+            _rotors[i].set(start[i]);
+        }
+        _split = _rotors.length - Math.min(numPawls(), FAST_ROTORS);
+        if (_slow == null) {
+            _slow = new int[alphabet().size()];
+        }
+        _settings = settings.setting();
+        _start = start;
+        _position = 0;
+        _slowValid = false;
+        _plugboard = settings.plugboard();
+        clearCache();
+    }
+
+    /** Cache the combined permutation of the whole machine for up to
+     *  CAPACITY distinct rotor positions, so that converting a character
+     *  at a cached position is a single table lookup.  This pays off when
+     *  messages revisit few positions, as with small alphabets.  A
+     *  CAPACITY of 0 turns caching off.  Positions must be representable
+     *  as a long. */
+    void setCacheCapacity(int capacity) {
+        if (capacity == 0) {
+            _cache = null;
+            return;
+        }
+        long states = 1;
+        for (int i = 1; i < numRotors(); i += 1) {
+            if (states > Long.MAX_VALUE / alphabet().size()) {
+                throw error("machine has too many positions to cache");
+            }
+            states *= alphabet().size();
+        }
+        _cache = new PermutationCache(capacity, alphabet().size());
+    }
+
+    /** Return the number of conversions that found their position in the
+     *  cache since its capacity was last set. */
+    long cacheHits() {
+        return _cache == null ? 0 : _cache.hits();
+    }
+
+    /** Return the number of conversions that had to build the permutation
+     *  for their position since the cache's capacity was last set. */
+    long cacheMisses() {
+        return _cache == null ? 0 : _cache.misses();
+    }
+
+    /** Discard all cached permutations, which no longer describe me. */
+    private void clearCache() {
+        if (_cache != null) {
+            _cache.clear();
+        }
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        int current = c;
         advanceMachine();
-        String checkKey = Character.toString(alphabet().toChar(current));
-        if (plugboard().cycles() != null) {
-            if (plugboard().cycles().containsKey(checkKey)) {
-                current = _plugboard.permute(current);
-            }
+        if (_cache != null) {
+            return cachedPermutation()[c];
+        }
+        return route(c);
+    }
+
+    /** Advance the machine, then store into TABLE[OFF + X], for each
+     *  index X, the result of converting X at my new position, that is,
+     *  the whole permutation that the next call of convert(int) would
+     *  apply.  Allocates nothing. */
+    void nextPermutation(int[] table, int off) {
+        advanceMachine();
+        for (int x = 0; x < _slow.length; x += 1) {
+            table[off + x] = route(x);
+        }
+    }
+
+    /** Returns the result of sending C (as an index) through the
+     *  plugboard, the rotors and back, without advancing the machine. */
+    private int route(int c) {
+        int current = c;
+        if (_plugboard != null) {
+            current = _plugboard.permute(current);
         }
-        for (int i = _rotors.length - 1; i >= 0; i -= 1) {
+        for (int i = _rotors.length - 1; i >= _split; i -= 1) {
             current = _rotors[i].convertForward(current);
         }
-        for (int i = 1; i < _rotors.length; i += 1) {
+        current = slowPermutation()[current];
+        for (int i = _split; i < _rotors.length; i += 1) {
             current = _rotors[i].convertBackward(current);
         }
-        checkKey = Character.toString(alphabet().toChar(current));
-        if (plugboard().cycles() != null) {
-            if (plugboard().cycles().containsValue(checkKey)) {
-                current = _plugboard.invert(current);
-            }
+        if (_plugboard != null) {
+            current = _plugboard.invert(current);
         }
         return current;
     }
 
+    /** Returns the permutation performed by the rotors in slots 0 through
+     *  _split - 1 (forward through them, off the reflector, and back), at
+     *  their current positions.  Those rotors move rarely, if at all, so
+     *  the table is rebuilt only after one of them has moved. */
+    private int[] slowPermutation() {
+        if (!_slowValid) {
+            for (int x = 0; x < _slow.length; x += 1) {
+                int current = x;
+                for (int i = _split - 1; i >= 0; i -= 1) {
+                    current = _rotors[i].convertForward(current);
+                }
+                for (int i = 1; i < _split; i += 1) {
+                    current = _rotors[i].convertBackward(current);
+                }
+                _slow[x] = current;
+            }
+            _slowValid = true;
+        }
+        return _slow;
+    }
+
+    /** Returns the permutation performed by route at the current rotor
+     *  positions, from the cache if possible. */
+    private int[] cachedPermutation() {
+        long key = 0;
+        for (int i = 1; i < _rotors.length; i += 1) {
+            key = key * alphabet().size() + _rotors[i].setting();
+        }
+        int[] table = _cache.get(key);
+        if (table == null) {
+            table = _cache.add(key);
+            for (int x = 0; x < table.length; x += 1) {
+                table[x] = route(x);
+            }
+        }
+        return table;
+    }
+
     /** Returns the result of converting the input character C (as a
      * character in the alphabet), after first advancing the machine. */
     char convert(char c) {
@@ -133,42 +443,91 @@ class Machine {
 
     /** Advances the machine. */
     void advanceMachine() {
-        boolean[] moveRotor = new boolean[_rotors.length];
-        moveRotor[_rotors.length - 1] = true;
-        for (int i = _rotors.length - 1; i > 0; i -= 1) {
-            if (_rotors[i].atNotch()) {
-                if (_rotors[i].rotates() && _rotors[i - 1].rotates()) {
-                    moveRotor[i] = true;
-                    moveRotor[i - 1] = true;
+        advanceRotors();
+        _position += 1;
+    }
+
+    /** Advance each rotor that moves on one advance of the machine. */
+    private void advanceRotors() {
+        int last = _rotors.length - 1;
+        for (int i = 0; i <= last; i += 1) {
+            Rotor rotor = _rotors[i];
+            if (i == last
+                || (rotor.rotates() && _rotors[i + 1].rotates()
+                    && _rotors[i + 1].atNotch())
+                || (i > 0 && rotor.rotates() && _rotors[i - 1].rotates()
+                    && rotor.atNotch())) {
+                rotor.advance();
+                if (i < _split && rotor.rotates()) {
+                    _slowValid = false;
                 }
             }
         }
-        for (int i = 0; i < moveRotor.length; i += 1) {
-            if (moveRotor[i]) {
-                _rotors[i].advance();
-            }
-        }
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String newMsg = "";
-        msg = msg.replaceAll("\\s+", "");
-        for (int i = 0; i < msg.length(); i += 1) {
-            newMsg = newMsg + convert(Character.toUpperCase(msg.charAt(i)));
+        char[] chars = msg.toCharArray();
+        int n = convert(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, ignoring
+     *  whitespace and upper-casing the rest, and store the results in OUT
+     *  starting at OUTOFF.  Returns the number of characters stored.  IN
+     *  and OUT may be the same array as long as OUTOFF <= OFF.  Updates
+     *  the state of the rotors, and allocates nothing. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char c = in[i];
+            if (!isWhitespace(c)) {
+                out[k] = convert(Character.toUpperCase(c));
+                k += 1;
+            }
+        }
+        return k - outOff;
+    }
+
+    /** Convert the remaining characters of IN as for convert(char[], ...),
+     *  putting the results into OUT, which must have room for them.
+     *  Returns the number of characters put. */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int n = convert(in.array(), in.arrayOffset() + in.position(),
+                            in.remaining(), out.array(),
+                            out.arrayOffset() + out.position());
+            in.position(in.limit());
+            out.position(out.position() + n);
+            return n;
+        }
+        int start = out.position();
+        while (in.hasRemaining()) {
+            char c = in.get();
+            if (!isWhitespace(c)) {
+                out.put(convert(Character.toUpperCase(c)));
+            }
         }
-        return newMsg;
+        return out.position() - start;
     }
 
-    /** Returns Rotor object with name NAME. */
+    /** Returns true iff C is a whitespace character to be ignored in
+     *  messages (one of the characters matched by \\s). */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\013'
+            || c == '\f' || c == '\r';
+    }
+
+    /** Returns the rotor named NAME: the one in my slots, if it is in
+     *  one, and otherwise the available rotor of that name. */
     Rotor getRotor(String name) {
-        for (Rotor r : _allRotors) {
-            if (r.name().equals(name)) {
+        for (Rotor r : _rotors) {
+            if (r != null && r.name().equals(name)) {
                 return r;
             }
         }
-        throw new EnigmaException("Rotor " + name + " not found.");
+        return _spec.rotor(name);
     }
 
     /** Returns the settings of all rotors (excluding reflector) as a String. */
@@ -183,7 +542,7 @@ class Machine {
     /** Return String containing names of all available Rotors. */
     String allRotors() {
         String str = "";
-        for (Rotor x : _allRotors) {
+        for (Rotor x : _spec.rotors()) {
             str = str + x.name() + " ";
         }
         return str;
@@ -200,7 +559,7 @@ class Machine {
 
     /** Returns Collection of all available Rotors. */
     Collection<Rotor> getAllRotors() {
-        return _allRotors;
+        return _spec.rotors();
     }
 
     /** Return PLUGBOARD. */
@@ -210,7 +569,7 @@ class Machine {
 
     /** Return ALPHABET. */
     Alphabet alphabet() {
-        return _alphabet;
+        return _spec.alphabet();
     }
 
     /** Return ROTORS (array of rotors inserted into machine. */
@@ -218,24 +577,39 @@ class Machine {
         return _rotors;
     }
 
-    /** Common alphabet of my rotors. */
-    private final Alphabet _alphabet;
-
-    /** Number of rotors to be placed in machine (should be 5). */
-    private int _numRotors;
-
-    /** Number of pawls in machine. */
-    private int _pawls;
-
-    /** Collection of all available rotors. */
-    private Collection<Rotor> _allRotors;
+    /** My description, which other machines may share. */
+    private final MachineSpec _spec;
 
     /** Array of rotors currently placed in machine. */
     private Rotor[] _rotors;
 
+    /** Names of the rotors placed so far by insertRotors. */
+    private final HashSet<String> _inserted = new HashSet<>();
+
     /** Permutation representing the plugboard. */
     private Permutation _plugboard;
 
     /** String representing settings of rotors (excluding the reflector). */
     private String _settings;
+
+    /** Setting of each slot as last given to setRotors. */
+    private int[] _start;
+
+    /** Number of advances since the last call to setRotors. */
+    private long _position;
+
+    /** Number of rightmost rotors that are not folded into _slow. */
+    private static final int FAST_ROTORS = 2;
+
+    /** Slots 0 through _split - 1 hold the rotors combined in _slow. */
+    private int _split;
+
+    /** Combined permutation of the rotors in slots 0 .. _split - 1. */
+    private int[] _slow;
+
+    /** True iff _slow reflects the current positions of its rotors. */
+    private boolean _slowValid;
+
+    /** Combined permutations by rotor position, or null if not caching. */
+    private PermutationCache _cache;
 }
@@ -0,0 +1,66 @@
+package enigma;
+
+/** The part of a machine's state given by a settings line: the rotors in
+ *  its slots, where they start, and its plugboard.  A MachineSettings
+ *  never changes once made, and may be restored to any machine with the
+ *  same description as the one it was saved from.
+ *  @author Chris Jereza
+ */
+class MachineSettings {
+
+    /** Settings with the rotors named ROTORS in the slots, slot I starting
+     *  at setting START[I] (for I > 0), as given by the string SETTING,
+     *  and plugboard PLUGBOARD.  ROTORS and START must not be changed
+     *  afterwards. */
+    MachineSettings(String[] rotors, int[] start, String setting,
+                    Permutation plugboard) {
+        _rotors = rotors;
+        _start = start;
+        _setting = setting;
+        _plugboard = plugboard;
+    }
+
+    /** Return these settings with plugboard PLUGBOARD instead of mine,
+     *  which it must equal. */
+    MachineSettings withPlugboard(Permutation plugboard) {
+        return new MachineSettings(_rotors, _start, _setting, plugboard);
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the name of the rotor in slot I. */
+    String rotor(int i) {
+        return _rotors[i];
+    }
+
+    /** Return the start settings of the slots, which may not be
+     *  changed. */
+    int[] start() {
+        return _start;
+    }
+
+    /** Return the rotor settings as given in the settings line. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Names of the rotors in each slot. */
+    private final String[] _rotors;
+
+    /** Start setting of each slot. */
+    private final int[] _start;
+
+    /** Rotor settings as given in the settings line. */
+    private final String _setting;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+}
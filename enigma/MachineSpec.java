@@ -0,0 +1,97 @@
+package enigma;
+
+import java.util.Collection;
+
+import static enigma.EnigmaException.*;
+
+/** The fixed description of an Enigma machine: its alphabet, its number
+ *  of rotor slots and pawls, and the rotors available to it.  A
+ *  MachineSpec never changes once made, so any number of threads may
+ *  share one.  Each Machine made from it holds only the state of one
+ *  conversion: which rotors are in its slots and where they are set, and
+ *  its plugboard.  Its rotors are copies of the spec's, sharing their
+ *  wiring tables, so making a machine copies no tables.
+ *  @author Chris Jereza
+ */
+class MachineSpec {
+
+    /** A description of machines with alphabet ALPHA, 1 < NUMROTORS rotor
+     *  slots, and 0 <= PAWLS < NUMROTORS pawls, which may use the rotors
+     *  in ALLROTORS.  The rotors of ALLROTORS serve only as patterns for
+     *  the rotors of each machine, and must not be changed afterwards. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorList(allRotors));
+    }
+
+    /** A description of machines as above, whose rotors come from
+     *  LIBRARY. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                RotorLibrary library) {
+        if (pawls > numRotors - 1) {
+            throw new EnigmaException("Invalid number of pawls.");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _library = library;
+    }
+
+    /** Return a new machine of this description, with empty slots. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the pattern for the rotor named NAME (the first of that
+     *  name, if there are several). */
+    Rotor rotor(String name) {
+        Rotor r = _library.rotor(name);
+        if (r == null) {
+            throw new EnigmaException("Rotor " + name + " not found.");
+        }
+        return r;
+    }
+
+    /** Return true iff I have a rotor named NAME. */
+    boolean hasRotor(String name) {
+        return _library.contains(name);
+    }
+
+    /** Return all the available rotors, which may not be changed.  This
+     *  builds every rotor of a library that builds them when used. */
+    Collection<Rotor> rotors() {
+        return _library.rotors();
+    }
+
+    /** Return the library of available rotors. */
+    RotorLibrary library() {
+        return _library;
+    }
+
+    /** Common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors, all at setting 0. */
+    private final RotorLibrary _library;
+}
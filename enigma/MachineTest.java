@@ -2,10 +2,14 @@ package enigma;
 
 import org.junit.Rule;
 import org.junit.Test;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.rules.Timeout;
 import static enigma.TestUtils.UPPER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * The suite of all JUnit tests for the Machine class.
@@ -150,4 +154,305 @@ public class MachineTest {
         }
         assertEquals(testMachine1.settings(), "AXLQ");
     }
+
+    @Test
+    public void checkBulkConversion() {
+        createTestMachine1();
+        testMachine1.setPlugboard(new Permutation("(HQ) (EX)"
+                + " (IP) (TR) (BY)", alpha));
+        char[] in = "##FROM HIS\tSHOULDER\nHIAWATHA##".toCharArray();
+        char[] out = new char[in.length + 1];
+        int n = testMachine1.convert(in, 2, in.length - 4, out, 1);
+        assertEquals(23, n);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(out, 1, n));
+    }
+
+    @Test
+    public void checkCharBufferConversion() {
+        createTestMachine1();
+        testMachine1.setPlugboard(new Permutation("(HQ) (EX)"
+                + " (IP) (TR) (BY)", alpha));
+        CharBuffer out = CharBuffer.allocate(64);
+        testMachine1.convert(CharBuffer.wrap("from his shoulder hiawatha"),
+                             out);
+        assertEquals(23, out.position());
+        testMachine1.convert(CharBuffer.wrap("TOOK THE CAMERA OF ROSEWOOD"
+                                             .toCharArray()), out);
+        out.flip();
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW"
+                     + "BHCNSCXNUOAATZXSRCFYDGU", out.toString());
+    }
+
+    @Test
+    public void checkCachedConversion() {
+        createTestMachine1();
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+        String expected = testMachine1.convert(msg);
+        testMachine1.setRotors("AXLE");
+        testMachine1.setCacheCapacity(100);
+        assertEquals(expected, testMachine1.convert(msg));
+        assertEquals(0, testMachine1.cacheHits());
+        testMachine1.setRotors("AXLE");
+        assertEquals(expected, testMachine1.convert(msg));
+        assertEquals(46, testMachine1.cacheHits());
+        assertEquals(46, testMachine1.cacheMisses());
+        testMachine1.insertRotors(new String[] {"B", "BETA", "III", "IV",
+                                                "I"});
+        testMachine1.setRotors("AXLE");
+        assertEquals(expected, testMachine1.convert(msg));
+        assertEquals(46, testMachine1.cacheHits());
+        assertEquals(92, testMachine1.cacheMisses());
+        testMachine1.setCacheCapacity(3);
+        testMachine1.setRotors("AXLE");
+        assertEquals(expected, testMachine1.convert(msg));
+        assertEquals(0, testMachine1.cacheHits());
+    }
+
+    @Test
+    public void checkManySlots() {
+        createTestMachine1();
+        allRotors.add(new FixedRotor("FI", perm1));
+        allRotors.add(new FixedRotor("FII", perm2));
+        allRotors.add(new FixedRotor("FIII", perm3));
+        Machine m = new Machine(alpha, 8, 2, allRotors);
+        m.insertRotors(new String[] {"C", "BETA", "FI", "GAMMA", "FII",
+                                     "FIII", "VI", "VII"});
+        m.setPlugboard(new Permutation("(AQ) (EP) (TZ)", alpha));
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            msg.append((char) ('A' + (i * 7) % 26));
+        }
+        m.setRotors("ABCDEYZ");
+        String cipher = m.convert(msg.toString());
+        assertEquals("ABCDEWX", m.settings());
+        assertEquals(reference(new String[] {"C", "BETA", "FI", "GAMMA",
+                                             "FII", "FIII", "VI", "VII"},
+                               "ABCDEYZ", "(AQ) (EP) (TZ)", msg),
+                     cipher);
+        m.setRotors("ABCDEYZ");
+        assertEquals(msg.toString(), m.convert(cipher));
+
+        String[] moving = {"B", "BETA", "FI", "FII", "V", "VI", "VII",
+                           "VIII"};
+        m = new Machine(alpha, 8, 4, allRotors);
+        m.insertRotors(moving);
+        m.setPlugboard(new Permutation("(KS) (LO)", alpha));
+        for (int i = 0; i < 18000; i += 1) {
+            msg.append((char) ('A' + (i * 11) % 26));
+        }
+        m.setRotors("XYZWYZX");
+        assertEquals(reference(moving, "XYZWYZX", "(KS) (LO)", msg),
+                     m.convert(msg.toString()));
+    }
+
+    /** Return MSG converted by rotors named NAMES with settings SETTINGS
+     *  and plugboard PLUGS, stepping and passing each character through
+     *  each rotor one at a time, as a check on Machine's tables. */
+    private String reference(String[] names, String settings, String plugs,
+                             CharSequence msg) {
+        Rotor[] rotors = new Rotor[names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            for (Rotor r : allRotors) {
+                if (r.name().equals(names[i])) {
+                    rotors[i] = r;
+                }
+            }
+            if (i > 0) {
+                rotors[i].set(settings.charAt(i - 1));
+            }
+        }
+        Permutation plugboard = new Permutation(plugs, alpha);
+        StringBuilder result = new StringBuilder();
+        int last = rotors.length - 1;
+        for (int k = 0; k < msg.length(); k += 1) {
+            boolean[] step = new boolean[rotors.length];
+            for (int i = 0; i <= last; i += 1) {
+                step[i] = i == last
+                    || (rotors[i].rotates() && rotors[i + 1].rotates()
+                        && rotors[i + 1].atNotch())
+                    || (i > 0 && rotors[i].rotates()
+                        && rotors[i - 1].rotates() && rotors[i].atNotch());
+            }
+            for (int i = 0; i <= last; i += 1) {
+                if (step[i]) {
+                    rotors[i].advance();
+                }
+            }
+            int c = plugboard.permute(alpha.toInt(msg.charAt(k)));
+            for (int i = last; i > 0; i -= 1) {
+                c = rotors[i].convertForward(c);
+            }
+            c = rotors[0].convertForward(c);
+            for (int i = 1; i <= last; i += 1) {
+                c = rotors[i].convertBackward(c);
+            }
+            result.append(alpha.toChar(plugboard.permute(c)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkSeek() {
+        createTestMachine1();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String cipher = testMachine1.convert(msg);
+        assertEquals(msg.length(), testMachine1.position());
+        for (int k = msg.length(); k >= 0; k -= 1) {
+            testMachine1.seek(k);
+            assertEquals(cipher.substring(k),
+                         testMachine1.convert(msg.substring(k)));
+        }
+        String[] expected = new String[100001];
+        testMachine1.setRotors("AXLE");
+        for (int k = 0; k < expected.length; k += 1) {
+            expected[k] = testMachine1.settings();
+            testMachine1.advanceMachine();
+        }
+        for (int k = 0; k < expected.length; k += 997) {
+            testMachine1.seek(k);
+            assertEquals(expected[k], testMachine1.settings());
+        }
+    }
+
+    @Test
+    public void checkConvertRange() {
+        createTestMachine1();
+        String cipher = testMachine1.convert("HELLOWORLD");
+        MessageConverter converter = new MessageConverter(2, 5);
+        testMachine1.setRotors("AXLE");
+        converter.start(testMachine1);
+        StringBuilder out = new StringBuilder();
+        converter.convertLine("HEL LOWORLD", out);
+        assertEquals(groups(cipher.substring(2, 5)), out.toString());
+        long big = 1L << 32;
+        converter = new MessageConverter(big + 1, big + 4);
+        converter.start(testMachine1);
+        out.setLength(0);
+        converter.convertLine("HELLOWORLD", out);
+        assertEquals("", out.toString());
+        converter = new MessageConverter(3, Integer.MAX_VALUE + 10L);
+        testMachine1.setRotors("AXLE");
+        converter.start(testMachine1);
+        converter.convertLine("HELLOWORLD", out);
+        assertEquals(groups(cipher.substring(3)), out.toString());
+    }
+
+    /** Return TEXT as a line in groups of five. */
+    private static String groups(String text) {
+        StringBuilder result = new StringBuilder();
+        MessageConverter.appendGroups(text.toCharArray(), 0, text.length(),
+                                      result);
+        return result.toString();
+    }
+
+    @Test
+    public void checkParallelConversion() {
+        createTestMachine1();
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            msg.append((char) ('a' + (i * 11) % 26));
+            if (i % 7 == 0) {
+                msg.append(' ');
+            }
+        }
+        String expected = testMachine1.convert(msg.toString());
+        String settings = testMachine1.settings();
+        testMachine1.setRotors("AXLE");
+        char[] buf = msg.toString().toCharArray();
+        ParallelConverter converter =
+            new ParallelConverter(new ForkJoinPool(4), 97);
+        int n = converter.convert(testMachine1, buf, 0, buf.length, buf, 0);
+        assertEquals(expected, new String(buf, 0, n));
+        assertEquals(settings, testMachine1.settings());
+    }
+
+    @Test
+    public void checkSharedSpec() {
+        createTestMachine1();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = testMachine1.convert(msg);
+        MachineSpec spec = testMachine1.spec();
+        Machine m1 = spec.newMachine(), m2 = spec.newMachine();
+        String[] rotorNames = {"B", "BETA", "III", "IV", "I"};
+        m1.insertRotors(rotorNames);
+        m2.insertRotors(rotorNames);
+        m1.setRotors("AXLE");
+        m2.setRotors("AXLE");
+        m1.setPlugboard(testMachine1.plugboard());
+        m2.setPlugboard(testMachine1.plugboard());
+        StringBuilder out1 = new StringBuilder(),
+            out2 = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            out1.append(m1.convert(msg.charAt(i)));
+            out2.append(m2.convert(msg.charAt(i)));
+        }
+        assertEquals(expected, out1.toString());
+        assertEquals(expected, out2.toString());
+        assertEquals(0, spec.rotor("IV").setting());
+    }
+
+    @Test
+    public void checkSettingsLine() {
+        createTestMachine1();
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = testMachine1.convert(msg);
+        Machine m = testMachine1.spec().newMachine();
+        Main.setUp(m, "*  B BETA\tIII IV I AXLE (YF)  (ZH) \r");
+        assertEquals("B BETA III IV I ", m.rotorsString());
+        assertEquals(expected, m.convert(msg));
+        try {
+            Main.setUp(m, "* B BETA III III I AXLE");
+            fail("duplicate rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Cannot insert duplicate rotor.", excp.getMessage());
+        }
+        try {
+            Main.setUp(m, "* B BETA III IV I");
+            fail("missing settings accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Missing rotor settings.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkLargeLibrary() {
+        createTestMachine1();
+        ArrayList<Rotor> library = new ArrayList<>(allRotors);
+        for (int i = 0; i < 20000; i += 1) {
+            library.add(new MovingRotor("R" + i, perm1, "Q"));
+        }
+        MachineSpec spec = new MachineSpec(alpha, 5, 3, library);
+        assertEquals("R19999", spec.rotor("R19999").name());
+        Machine m = spec.newMachine();
+        Main.setUp(m, "* B BETA R7 R19999 R42 AAAA");
+        assertEquals("B BETA R7 R19999 R42 ", m.rotorsString());
+        assertEquals("AAAA", m.settings());
+    }
+
+    @Test
+    public void checkSettingsCache() {
+        createTestMachine1();
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = testMachine1.convert(msg);
+        MachineSpec spec = testMachine1.spec();
+        SettingsCache keys = new SettingsCache(spec, 2);
+        Machine m = spec.newMachine();
+        keys.setUp(m, "* B BETA III IV I AXLE (YF) (ZH)");
+        assertEquals(expected, m.convert(msg));
+        keys.setUp(m, "* B GAMMA II V I AAAA (YF) (ZH)");
+        keys.setUp(m, "*  B BETA\tIII IV I AXLE (YF)  (ZH) ");
+        assertEquals(expected, m.convert(msg));
+        assertEquals(1, keys.hits());
+        assertEquals(2, keys.misses());
+        assertSame(keys.get("* B BETA III IV I AXLE (YF) (ZH)").plugboard(),
+                   keys.get("* B GAMMA II V I AAAA (YF) (ZH)").plugboard());
+        keys.setUp(m, "* B BETA I II III AAAA");
+        assertEquals(1, keys.evictions());
+        try {
+            keys.setUp(m, "* B BETA III III I AXLE");
+            fail("duplicate rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Cannot insert duplicate rotor.", excp.getMessage());
+        }
+    }
 }
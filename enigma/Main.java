@@ -1,12 +1,28 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -16,57 +32,224 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3, not counting
+     *  options.  ARGS[0] is the name of a configuration file, or of a
+     *  compiled one made by CompileConfig, which is mapped into memory
+     *  and whose rotors are built only as they are used.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options start with "--" and may appear anywhere in ARGS:
+     *    --range=FROM:TO  Convert only characters FROM (inclusive) through
+     *                     TO (exclusive) of each message, numbering the
+     *                     non-whitespace characters following each
+     *                     settings line from 0.  The machine jumps
+     *                     straight to FROM, and only the message lines
+     *                     that overlap the range produce output.
+     *    --blocks         Convert the blocks of lines that begin with each
+     *                     settings line concurrently, each on a machine of
+     *                     its own.  Output is written in input order.
+     *    --threads=N      Use N threads for --blocks (by default, one per
+     *                     available processor).
+     *    --pipeline       Read, convert and write on separate threads, so
+     *                     that input and output overlap conversion.
+     *    --flush-lines    Write out each line of output as soon as it is
+     *                     converted, rather than when the output buffer
+     *                     fills.  This is the default when reading from
+     *                     and writing to a terminal.
+     *    --mmap           Read the input file by mapping it into memory,
+     *                     rather than through a stream.  Ignored when
+     *                     input comes from the standard input or is in
+     *                     a charset that cannot be mapped. */
     public static void main(String... args) {
+        int code = run(args, null, System.in, System.out, System.err,
+                       System.console() != null, null);
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Process ARGS as for main, taking relative file names relative to
+     *  DIR (or the current directory if DIR is null), reading standard
+     *  input from IN and writing standard output to OUT and error
+     *  messages to ERR.  TERMINAL is true iff the standard input and
+     *  output are a terminal.  Configuration files are parsed through
+     *  CONFIGS, unless it is null.  Returns the exit code. */
+    static int run(String[] args, File dir, InputStream in, OutputStream out,
+                   PrintStream err, boolean terminal, ConfigCache configs) {
         try {
-            new Main(args).process();
-            return;
+            Main main = new Main(args, dir, in, out, terminal);
+            main._configs = configs;
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
+            return 0;
         } catch (EnigmaException excp) {
-            System.err.printf("Error: %s%n", excp.getMessage());
+            err.printf("Error: %s%n", excp.getMessage());
         }
-        System.exit(1);
+        return 1;
     }
 
-    /** Check ARGS and open the necessary files (see comment on main). */
-    Main(String[] args) {
+    /** Check ARGS and open the necessary files (see comment on main),
+     *  relative to DIR, with standard input IN and standard output OUT,
+     *  which are a terminal iff TERMINAL. */
+    Main(String[] args, File dir, InputStream in, OutputStream out,
+         boolean terminal) {
+        _dir = dir;
+        args = parseOptions(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (!MappedRotorLibrary.isLibrary(file(args[0]))) {
+            _config = readText(args[0]);
+        }
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getLines(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(new InputStreamReader(in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _outputFile = getOutput(args[2]);
+            _output = new GroupedWriter(_outputFile, _flushLines);
         } else {
-            _output = System.out;
+            _flushLines |= args.length == 1 && terminal;
+            _output = new GroupedWriter(out, _flushLines);
+        }
+    }
+
+    /** A Main that has opened no files, for reading configurations. */
+    private Main() {
+    }
+
+    /** Return the description of the machine configured by the file
+     *  named NAME. */
+    static MachineSpec loadConfig(String name) {
+        Main main = new Main();
+        main._configName = name;
+        if (MappedRotorLibrary.isLibrary(main.file(name))) {
+            return main.readConfig();
+        }
+        main._config = main.readText(name);
+        return main.readConfig();
+    }
+
+    /** Record the options in ARGS, returning the remaining arguments. */
+    private String[] parseOptions(String[] args) {
+        ArrayList<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                rest.add(arg);
+            } else if (arg.startsWith("--range=")) {
+                String[] bounds = arg.substring("--range=".length())
+                    .split(":", 2);
+                try {
+                    _rangeFrom = Long.parseLong(bounds[0]);
+                    _rangeTo = Long.parseLong(bounds[1]);
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw error("bad range: %s", arg);
+                }
+                if (_rangeFrom < 0 || _rangeTo < _rangeFrom) {
+                    throw error("bad range: %s", arg);
+                }
+            } else if (arg.equals("--blocks")) {
+                _blocks = true;
+            } else if (arg.equals("--pipeline")) {
+                _pipeline = true;
+            } else if (arg.equals("--flush-lines")) {
+                _flushLines = true;
+            } else if (arg.equals("--mmap")) {
+                _mmap = true;
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    _threads = Integer.parseInt(arg.substring(
+                                                  "--threads=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad thread count: %s", arg);
+                }
+                if (_threads < 1) {
+                    throw error("bad thread count: %s", arg);
+                }
+            } else {
+                throw error("unknown option: %s", arg);
+            }
+        }
+        if (_blocks && _pipeline) {
+            throw error("--blocks and --pipeline are exclusive");
+        }
+        return rest.toArray(new String[0]);
+    }
+
+    /** Return the contents of the file named NAME, in the default
+     *  charset. */
+    private char[] readText(String name) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file(name).toPath());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            CharBuffer text = Charset.defaultCharset().newDecoder()
+                .decode(ByteBuffer.wrap(bytes));
+            return Arrays.copyOf(text.array(), text.remaining());
+        } catch (CharacterCodingException excp) {
+            throw error("could not read %s: malformed input", name);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the file named NAME, relative to _dir. */
+    private File file(String name) {
+        File file = new File(name);
+        if (_dir == null || file.isAbsolute()) {
+            return file;
+        }
+        return new File(_dir, name);
+    }
+
+    /** Close the files I opened. */
+    private void close() {
+        _input.close();
+        if (_outputFile != null) {
+            try {
+                _outputFile.close();
+            } catch (IOException excp) {
+                throw error("could not write output: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /** Return a source of the lines of the file named NAME. */
+    private LineSource getLines(String name) {
+        if (_mmap && MappedLineReader.supports(Charset.defaultCharset())) {
+            return new MappedLineReader(file(name).getPath(),
+                                        Charset.defaultCharset());
+        }
+        return new LineReader(getReader(name));
+    }
+
+    /** Return a Reader of the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(new FileInputStream(file(name)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a stream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new FileOutputStream(file(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -76,151 +259,347 @@ public final class Main {
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        _machine = readConfig();
+        if (_configs == null) {
+            _spec = readConfig();
+        } else {
+            _spec = _configs.get(file(_configName), this::readConfig);
+        }
+        _machine = _spec.newMachine();
+        _keys = new SettingsCache(_spec, SETTINGS_CACHE_SIZE);
+        try {
+            if (_blocks) {
+                processBlocks();
+            } else if (_pipeline) {
+                _converter = new MessageConverter(_rangeFrom, _rangeTo);
+                new Pipeline(_input, _machine,
+                             (line) -> _keys.setUp(_machine, line),
+                             _converter, _output).run();
+            } else {
+                processLines();
+            }
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Apply _machine's configuration to the messages in _input, one
+     *  line at a time. */
+    private void processLines() {
+        _converter = new MessageConverter(_rangeFrom, _rangeTo);
         boolean set = false;
-        String next;
-        while (_input.hasNextLine()) {
-            next = _input.nextLine();
-            if (next.indexOf('*') != -1) {
-                setUp(_machine, next);
+        while (_input.nextLine()) {
+            int len = readPiece(MessageConverter.PIECE_SIZE);
+            if (isSettings(len)) {
+                StringBuilder settings = new StringBuilder();
+                settings.append(_text, 0, len);
+                _input.readRest(settings);
+                _keys.setUp(_machine, settings.toString());
+                _converter.start(_machine);
                 set = true;
             } else if (set) {
-                printMessageLine(next);
+                printMessageLine(len);
             } else {
                 throw new EnigmaException("Input must begin with Setting.");
             }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Read up to MAX more characters of the current line of _input into
+     *  _text, returning how many were read. */
+    private int readPiece(int max) {
+        int len = 0;
+        while (len < max) {
+            if (_text.length - len < MIN_READ) {
+                _text = Arrays.copyOf(_text, 2 * _text.length);
+            }
+            int n = _input.read(_text, len,
+                                Math.min(_text.length - len, max - len));
+            if (n == -1) {
+                break;
+            }
+            len += n;
+        }
+        return len;
+    }
+
+    /** Return true iff the line in the first LEN characters of _text is a
+     *  settings line. */
+    private boolean isSettings(int len) {
+        for (int i = 0; i < len; i += 1) {
+            if (_text[i] == '*') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Apply _machine's configuration to the messages in _input as for
+     *  process, converting the blocks of lines that start with each
+     *  settings line concurrently on machines of their own. */
+    private void processBlocks() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
         try {
-            checkNext();
-            String alphabet = _config.next();
-            _alphabet = new Alphabet(alphabet);
-            checkNextInt();
-            int numRotors = _config.nextInt();
-            checkNextInt();
-            int numPawls = _config.nextInt();
-            ArrayList<Rotor> rotors = new ArrayList<>();
-            checkNext();
-            String next = _config.next();
-            while (_config.hasNext()) {
-                String rotorName = next.toUpperCase();
-                checkNext();
-                next = _config.next();
-                char rotorType = next.charAt(0);
-                String notches = "";
-                for (int i = 1; i < next.length(); i += 1) {
-                    notches += next.charAt(i);
-                }
-                String cycles = "";
-                if (_config.hasNext()) {
-                    next = _config.next();
-                }
-                while (next.indexOf('(') != -1 && _config.hasNext()) {
-                    if (next.indexOf(')') == -1) {
-                        throw new EnigmaException("Improper parentheses");
+            Block block = null;
+            while (_input.nextLine()) {
+                int n = readPiece(Integer.MAX_VALUE);
+                String next = new String(_text, 0, n);
+                if (next.indexOf('*') != -1) {
+                    if (block != null) {
+                        pending.add(pool.submit(block));
                     }
-                    cycles += next;
-                    next = _config.next();
-                }
-                if (!_config.hasNext()) {
-                    cycles += next;
-                }
-                Permutation perm = new Permutation(cycles, _alphabet);
-                if (rotorType == 'M') {
-                    rotors.add(new MovingRotor(rotorName, perm, notches));
-                } else if (rotorType == 'N') {
-                    rotors.add(new FixedRotor(rotorName, perm));
+                    block = new Block(next);
+                } else if (block != null) {
+                    block.add(next);
                 } else {
-                    rotors.add(new Reflector(rotorName, perm));
+                    throw new EnigmaException(
+                        "Input must begin with Setting.");
+                }
+                while (pending.size() >= MAX_PENDING_PER_THREAD * _threads) {
+                    printBlock(pending.remove());
                 }
             }
-            return new Machine(_alphabet, numRotors, numPawls, rotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            if (block != null) {
+                pending.add(pool.submit(block));
+            }
+            while (!pending.isEmpty()) {
+                printBlock(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    /** Throws exception if CONFIG.hasNext is false. */
-    private void checkNext() {
-        if (!_config.hasNext()) {
-            throw new EnigmaException("Config file has wrong format.");
+    /** Print the output of the block converted by RESULT, waiting for it
+     *  if need be, and report its error, if any. */
+    private void printBlock(Future<Block> result) {
+        Block block;
+        try {
+            block = result.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause());
+        }
+        _output.writeFormatted(block.output());
+        if (block.error() != null) {
+            throw block.error();
         }
     }
 
-    /**Throws exception if CONFIG.hasNextInt() is false. */
-    private void checkNextInt() {
-        if (!_config.hasNextInt()) {
-            throw new EnigmaException("Config file has wrong format.");
+    /** A settings line and the message lines that follow it, converted on
+     *  the calling thread's own machine. */
+    private class Block implements Callable<Block> {
+
+        /** A block starting with SETTINGS. */
+        Block(String settings) {
+            _blockSettings = settings;
+        }
+
+        /** Add LINE to my message lines. */
+        void add(String line) {
+            _lines.add(line);
+        }
+
+        @Override
+        public Block call() {
+            Machine m = _workerMachine.get();
+            MessageConverter converter = _workerConverter.get();
+            try {
+                _keys.setUp(m, _blockSettings);
+                converter.start(m);
+                for (String line : _lines) {
+                    converter.convertLine(line, _blockOutput);
+                }
+            } catch (EnigmaException excp) {
+                _error = excp;
+            }
+            _lines = null;
+            return this;
+        }
+
+        /** Return the output of my lines up to the first error. */
+        StringBuilder output() {
+            return _blockOutput;
         }
+
+        /** Return the error that stopped my conversion, or null. */
+        EnigmaException error() {
+            return _error;
+        }
+
+        /** My settings line. */
+        private final String _blockSettings;
+
+        /** My message lines. */
+        private ArrayList<String> _lines = new ArrayList<>();
+
+        /** My converted, formatted lines. */
+        private final StringBuilder _blockOutput = new StringBuilder();
+
+        /** Error that stopped my conversion, or null. */
+        private EnigmaException _error;
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            return null;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Return the description of an Enigma machine configured from the
+     *  contents of configuration file _config, or, if it is null, from the
+     *  compiled configuration file named _configName.  The rotors of a
+     *  configuration file are checked now, but built only when used. */
+    private MachineSpec readConfig() {
+        if (_config == null) {
+            return MappedRotorLibrary.load(file(_configName));
         }
+        return TextRotorLibrary.load(_config);
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        settings = settings.replaceAll("\\s+", " ");
-        String[] setArray = settings.split(" ");
-        int numRotors = 0;
-        for (int i = 1; i < setArray.length; i += 1) {
-            for (Rotor x : M.getAllRotors()) {
-                if (x.name().equals(setArray[i])) {
-                    numRotors += 1;
+     *  which must have the format specified in the assignment.  The
+     *  line is split into words in one pass; the leading words (after
+     *  the first) that name M's rotors give the rotors, the next gives
+     *  their settings, and the rest are the plugboard's cycles. */
+    static void setUp(Machine M, String settings) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = 0, len = settings.length();
+        for (int i = 0; i <= len; i += 1) {
+            if (i == len || Machine.isWhitespace(settings.charAt(i))) {
+                if (i > start || i == 0 && len > 0) {
+                    words.add(settings.substring(start, i));
                 }
+                start = i + 1;
+            }
+        }
+        int numRotors = 0;
+        for (int i = 1; i < words.size(); i += 1) {
+            if (M.spec().hasRotor(words.get(i))) {
+                numRotors += 1;
             }
         }
         String[] rotors = new String[numRotors];
-        System.arraycopy(setArray, 1, rotors, 0, numRotors);
+        for (int i = 0; i < numRotors; i += 1) {
+            rotors[i] = words.get(i + 1);
+        }
         M.insertRotors(rotors);
-        M.setRotors(setArray[numRotors + 1]);
-        String plugboardCycles = "";
-        for (int x = numRotors + 2; x < setArray.length; x += 1) {
-            plugboardCycles += setArray[x];
+        if (numRotors + 1 >= words.size()) {
+            throw new EnigmaException("Missing rotor settings.");
         }
-        M.setPlugboard(new Permutation(plugboardCycles, _alphabet));
+        M.setRotors(words.get(numRotors + 1));
+        StringBuilder plugboardCycles = new StringBuilder();
+        for (int x = numRotors + 2; x < words.size(); x += 1) {
+            plugboardCycles.append(words.get(x));
+        }
+        M.setPlugboard(new Permutation(plugboardCycles.toString(),
+                                       M.alphabet()));
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = _machine.convert(msg);
-        String word = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            word += msg.charAt(i);
-            if (word.length() % 5 == 0 || i == msg.length() - 1) {
-                _output.print(word + " ");
-                word = "";
+    /** Print the message line whose first LEN characters are in _text in
+     *  groups of five (except that the last group may have fewer
+     *  letters), reading and converting the rest of it a piece at a
+     *  time. */
+    private void printMessageLine(int len) {
+        boolean printed = false;
+        while (true) {
+            int n = _converter.convert(_text, 0, len);
+            if (n >= 0) {
+                _output.write(_text, 0, n);
+                printed = true;
+            }
+            if (_input.atLineEnd()) {
+                break;
             }
+            len = readPiece(MessageConverter.PIECE_SIZE);
+            if (isSettings(len)) {
+                throw error("settings line too long");
+            }
+        }
+        if (printed) {
+            _output.endLine();
         }
-        _output.println();
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
-
     /** Source of input messages. */
-    private Scanner _input;
+    private LineSource _input;
+
+    /** The current line of _input. */
+    private char[] _text = new char[INITIAL_LINE_SIZE];
+
+    /** Initial size of _text. */
+    private static final int INITIAL_LINE_SIZE = 1 << 12;
+
+    /** Least room for characters offered to each read into _text. */
+    private static final int MIN_READ = 1 << 10;
+
+    /** Directory against which relative file names are taken, or null
+     *  for the current directory. */
+    private File _dir;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Cache of parsed configurations, or null. */
+    private ConfigCache _configs;
+
+    /** The output file, if output does not go to the standard output. */
+    private OutputStream _outputFile;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Contents of the configuration file, or null if it is a compiled
+     *  configuration file. */
+    private char[] _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupedWriter _output;
 
     /** String containing settings line for Machine. */
     private String _settings;
 
+    /** Description of the machine configured by _config. */
+    private MachineSpec _spec;
+
     /** Machine to be used. */
     private Machine _machine;
+
+    /** Compiled settings lines, shared by all my machines. */
+    private SettingsCache _keys;
+
+    /** Most settings lines kept compiled. */
+    private static final int SETTINGS_CACHE_SIZE = 256;
+
+    /** Position of the first character of each message to convert. */
+    private long _rangeFrom;
+
+    /** Position just past the last character of each message to convert,
+     *  or -1 to convert all of it. */
+    private long _rangeTo = -1;
+
+    /** True iff settings blocks are converted concurrently. */
+    private boolean _blocks;
+
+    /** True iff each line of output is written out at once. */
+    private boolean _flushLines;
+
+    /** True iff the input file is mapped into memory. */
+    private boolean _mmap;
+
+    /** True iff reading, conversion and writing run concurrently. */
+    private boolean _pipeline;
+
+    /** Number of threads converting blocks. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Most blocks per thread read ahead of the output. */
+    private static final int MAX_PENDING_PER_THREAD = 16;
+
+    /** Each block-converting thread's own machine. */
+    private final ThreadLocal<Machine> _workerMachine =
+        ThreadLocal.withInitial(() -> _spec.newMachine());
+
+    /** Each block-converting thread's own message converter. */
+    private final ThreadLocal<MessageConverter> _workerConverter =
+        ThreadLocal.withInitial(() -> new MessageConverter(_rangeFrom,
+                                                           _rangeTo));
+
+    /** Converter for the lines of the current message. */
+    private MessageConverter _converter;
 }
@@ -0,0 +1,296 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A LineSource reading the lines of a file by mapping it into memory a
+ *  window at a time, so that files of any size may be read without
+ *  copying them through a stream.  Line separators are found among the
+ *  mapped bytes, and only the characters of each line are decoded,
+ *  straight into the caller's buffer.  Works for files in UTF-8,
+ *  ISO-8859-1 or US-ASCII; malformed input decodes to '\uFFFD', as it
+ *  does when read through a Reader.
+ *  @author Chris Jereza
+ */
+class MappedLineReader implements LineSource {
+
+    /** A reader of the lines of the file named NAME, which is encoded in
+     *  CHARSET, mapping WINDOWSIZE bytes at a time. */
+    MappedLineReader(String name, Charset charset, int windowSize) {
+        if (!supports(charset)) {
+            throw error("cannot map input in %s", charset);
+        }
+        try {
+            _channel = FileChannel.open(Paths.get(name),
+                                        StandardOpenOption.READ);
+            _size = _channel.size();
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        _utf8 = charset.equals(StandardCharsets.UTF_8);
+        _latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _windowSize = Math.max(windowSize, MIN_WINDOW_SIZE);
+        map(0);
+    }
+
+    /** A reader of the lines of the file named NAME, which is encoded in
+     *  CHARSET. */
+    MappedLineReader(String name, Charset charset) {
+        this(name, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /** Return true iff I can read files encoded in CHARSET. */
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public boolean nextLine() {
+        while (_inLine) {
+            read(_skipped, 0, _skipped.length);
+        }
+        if (!fill()) {
+            return false;
+        }
+        if (_skipLF) {
+            _skipLF = false;
+            if (_window.get(_pos) == '\n') {
+                _pos += 1;
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+        _inLine = true;
+        return true;
+    }
+
+    @Override
+    public int read(char[] buf, int off, int len) {
+        int n = 0;
+        if (_pending != 0 && len > 0) {
+            buf[off] = _pending;
+            _pending = 0;
+            n += 1;
+        }
+        while (_inLine && n < len) {
+            if (!fill()) {
+                _inLine = false;
+                break;
+            }
+            int safe =
+                _windowEnd == _size ? _limit : _limit - MAX_SEQUENCE + 1;
+            while (n < len && _pos < _limit) {
+                byte b = _window.get(_pos);
+                if (b == '\n' || b == '\r') {
+                    endLine(1);
+                    break;
+                } else if (b >= 0) {
+                    buf[off + n] = (char) b;
+                    n += 1;
+                    _pos += 1;
+                } else if (_pos >= safe) {
+                    break;
+                } else {
+                    int sep = separatorLength(_pos);
+                    if (sep > 0) {
+                        endLine(sep);
+                        break;
+                    }
+                    int k = decode(buf, off + n, len - n);
+                    if (k == 0) {
+                        break;
+                    }
+                    n += k;
+                }
+            }
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public boolean atLineEnd() {
+        if (_pending != 0) {
+            return false;
+        } else if (_inLine && !fill()) {
+            _inLine = false;
+        } else if (_inLine && separatorLength(_pos) > 0) {
+            endLine(separatorLength(_pos));
+        }
+        return !_inLine;
+    }
+
+    @Override
+    public boolean ready() {
+        return _windowStart + _pos < _size;
+    }
+
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close input");
+        }
+    }
+
+    /** Return the number of bytes in the line separator at _window[P],
+     *  or 0 if there is none there. */
+    private int separatorLength(int p) {
+        byte b = _window.get(p);
+        if (b == '\n' || b == '\r') {
+            return 1;
+        } else if (_latin1) {
+            return b == (byte) 0x85 ? 1 : 0;
+        } else if (!_utf8) {
+            return 0;
+        } else if (b == (byte) 0xc2 && p + 1 < _limit) {
+            return _window.get(p + 1) == (byte) 0x85 ? 2 : 0;
+        } else if (b == (byte) 0xe2 && p + 2 < _limit
+                   && _window.get(p + 1) == (byte) 0x80) {
+            byte c = _window.get(p + 2);
+            return c == (byte) 0xa8 || c == (byte) 0xa9 ? 3 : 0;
+        }
+        return 0;
+    }
+
+    /** Decode the run of non-ASCII bytes at _pos into up to LEN characters
+     *  of BUF, starting at OFF, returning the number of characters
+     *  decoded, which is 0 only if the run is cut off by the end of the
+     *  window.  If LEN is 1 and the next character is a surrogate pair,
+     *  its second half is left in _pending. */
+    private int decode(char[] buf, int off, int len) {
+        if (!_utf8) {
+            byte b = _window.get(_pos);
+            buf[off] = _latin1 ? (char) (b & 0xff) : '\uFFFD';
+            _pos += 1;
+            return 1;
+        }
+        int end = _pos;
+        while (end < _limit && _window.get(end) < 0
+               && separatorLength(end) == 0) {
+            end += 1;
+        }
+        boolean last = end < _limit || _windowEnd == _size;
+        _bytes.limit(end).position(_pos);
+        CharBuffer out = CharBuffer.wrap(buf, off, len);
+        _decoder.decode(_bytes, out, last);
+        if (out.position() == off && _bytes.position() < end && len == 1) {
+            CharBuffer pair = CharBuffer.wrap(_pair);
+            _decoder.decode(_bytes, pair, last);
+            buf[off] = _pair[0];
+            _pending = _pair[1];
+            out.position(off + 1);
+        }
+        _pos = _bytes.position();
+        if (last && _pos == end) {
+            _decoder.reset();
+        }
+        return out.position() - off;
+    }
+
+    /** Consume the line separator of LEN bytes at _pos, ending the current
+     *  line. */
+    private void endLine(int len) {
+        _skipLF = _window.get(_pos) == '\r';
+        _pos += len;
+        _inLine = false;
+    }
+
+    /** Make sure that at least one unread byte is mapped, if any are left,
+     *  and that any character starting there is mapped entire.  Returns
+     *  false at the end of the file. */
+    private boolean fill() {
+        if (_limit - _pos < MAX_SEQUENCE && _windowEnd < _size) {
+            map(_windowStart + _pos);
+        }
+        return _pos < _limit;
+    }
+
+    /** Map the window of the file starting at byte START. */
+    private void map(long start) {
+        long len = Math.min(_size - start, _windowSize);
+        try {
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _bytes = _window.duplicate();
+        _windowStart = start;
+        _windowEnd = start + len;
+        _pos = 0;
+        _limit = (int) len;
+    }
+
+    /** Default number of bytes mapped at once. */
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    /** Smallest number of bytes mapped at once. */
+    private static final int MIN_WINDOW_SIZE = 16;
+
+    /** Most bytes in the encoding of one character or separator. */
+    private static final int MAX_SEQUENCE = 4;
+
+    /** The file being read. */
+    private final FileChannel _channel;
+
+    /** Size of the file in bytes. */
+    private final long _size;
+
+    /** Number of bytes mapped at once. */
+    private final int _windowSize;
+
+    /** True iff the file is in UTF-8. */
+    private final boolean _utf8;
+
+    /** True iff the file is in ISO-8859-1. */
+    private final boolean _latin1;
+
+    /** Decoder for non-ASCII characters in UTF-8. */
+    private final CharsetDecoder _decoder;
+
+    /** The mapped window of the file. */
+    private MappedByteBuffer _window;
+
+    /** A view of _window used for decoding. */
+    private ByteBuffer _bytes;
+
+    /** Bounds of the window within the file. */
+    private long _windowStart, _windowEnd;
+
+    /** The unread bytes of the window are _window[_pos .. _limit - 1]. */
+    private int _pos, _limit;
+
+    /** True iff a line has been started and not completely read. */
+    private boolean _inLine;
+
+    /** True iff the last separator was '\r', so that an immediately
+     *  following '\n' belongs to it. */
+    private boolean _skipLF;
+
+    /** The second half of a surrogate pair that did not fit in the
+     *  caller's buffer, or 0. */
+    private char _pending;
+
+    /** Room for one surrogate pair. */
+    private final char[] _pair = new char[2];
+
+    /** Destination of skipped characters. */
+    private final char[] _skipped = new char[READ_SIZE];
+}
@@ -0,0 +1,380 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A library of rotors read from a compiled configuration file, which is
+ *  mapped into memory rather than read.  Opening one reads only its
+ *  header; a rotor is built from its tables in the file only when first
+ *  looked up, so the time to open a library and the memory it takes do
+ *  not grow with the number of rotors in it.
+ *
+ *  A compiled configuration file (see CompileConfig) holds everything in
+ *  a configuration file, with each rotor's wiring as tables rather than
+ *  cycles.  All numbers are big-endian, and all characters UTF-16:
+ *    int MAGIC, int VERSION,
+ *    int number of rotor slots, int number of pawls,
+ *    int alphabet size N, int number of rotors R, int hash table size H,
+ *    char[N] alphabet,
+ *    int[H] hash table: at the slot for each name (see slot), one more
+ *        than the number of the first rotor of that name, or 0,
+ *    R records of RECORD_INTS ints each: offset and length of the
+ *        rotor's name, its type ('M', 'N' or 'R'), offset and length of
+ *        its notches, and offset of its tables,
+ *    the names and notches, as chars,
+ *    for each rotor, char[N] forward table, then char[N] inverse table.
+ *  Offsets are in bytes from the start of the file; lengths are in chars.
+ *  @author Chris Jereza
+ */
+class MappedRotorLibrary implements RotorLibrary {
+
+    /** The library in the compiled configuration file FILE. */
+    private MappedRotorLibrary(File file) {
+        _name = file.getPath();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("rotor library %s is too large", _name);
+            }
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                  channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", _name);
+        }
+        if (_buffer.limit() < HEADER_SIZE || _buffer.getInt(0) != MAGIC) {
+            throw error("%s is not a rotor library", _name);
+        }
+        if (_buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw error("rotor library %s has unknown version %d", _name,
+                        _buffer.getInt(VERSION_OFFSET));
+        }
+        _slots = _buffer.getInt(SLOTS_OFFSET);
+        _pawls = _buffer.getInt(PAWLS_OFFSET);
+        int n = _buffer.getInt(ALPHABET_SIZE_OFFSET);
+        _count = _buffer.getInt(COUNT_OFFSET);
+        _hashSize = _buffer.getInt(HASH_SIZE_OFFSET);
+        if (n <= 0 || _count < 0 || _hashSize <= _count
+            || Integer.bitCount(_hashSize) != 1) {
+            throw error("rotor library %s is corrupt", _name);
+        }
+        _hashOffset = HEADER_SIZE + 2L * n;
+        _recordsOffset = _hashOffset + 4L * _hashSize;
+        if (_recordsOffset + 4L * RECORD_INTS * _count > _buffer.limit()) {
+            throw error("rotor library %s is truncated", _name);
+        }
+        _alphabet = new Alphabet(chars(HEADER_SIZE, n));
+    }
+
+    /** Return true iff FILE is a compiled configuration file, judging by
+     *  its first bytes. */
+    static boolean isLibrary(File file) {
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the description of the machine in the compiled
+     *  configuration file FILE. */
+    static MachineSpec load(File file) {
+        MappedRotorLibrary library = new MappedRotorLibrary(file);
+        return new MachineSpec(library._alphabet, library._slots,
+                               library._pawls, library);
+    }
+
+    /** Write the machine described by SPEC to FILE as a compiled
+     *  configuration file. */
+    static void write(MachineSpec spec, File file) {
+        Alphabet alphabet = spec.alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>(spec.rotors());
+        int n = alphabet.size(), count = rotors.size();
+        int hashSize = Integer.highestOneBit(Math.max(1, 2 * count)) * 2;
+        int[] hash = new int[hashSize];
+        for (int r = 0; r < count; r += 1) {
+            String name = rotors.get(r).name();
+            int k = slot(name, hashSize);
+            while (hash[k] != 0
+                   && !rotors.get(hash[k] - 1).name().equals(name)) {
+                k = (k + 1) & (hashSize - 1);
+            }
+            if (hash[k] == 0) {
+                hash[k] = r + 1;
+            }
+        }
+        long strings = HEADER_SIZE + 2L * n + 4L * hashSize
+            + 4L * RECORD_INTS * count;
+        long tables = strings;
+        for (Rotor rotor : rotors) {
+            tables += 2L * (rotor.name().length() + notches(rotor).length());
+        }
+        if (tables + 4L * n * count > Integer.MAX_VALUE) {
+            throw error("too many rotors to compile");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(spec.numRotors());
+            out.writeInt(spec.numPawls());
+            out.writeInt(n);
+            out.writeInt(count);
+            out.writeInt(hashSize);
+            out.writeChars(alphabet.string());
+            for (int h : hash) {
+                out.writeInt(h);
+            }
+            long offset = strings;
+            for (int r = 0; r < count; r += 1) {
+                Rotor rotor = rotors.get(r);
+                String name = rotor.name(), notches = notches(rotor);
+                out.writeInt((int) offset);
+                out.writeInt(name.length());
+                out.writeInt(type(rotor));
+                out.writeInt((int) offset + 2 * name.length());
+                out.writeInt(notches.length());
+                out.writeInt((int) (tables + 4L * n * r));
+                offset += 2L * (name.length() + notches.length());
+            }
+            for (Rotor rotor : rotors) {
+                out.writeChars(rotor.name());
+                out.writeChars(notches(rotor));
+            }
+            for (Rotor rotor : rotors) {
+                for (int x : rotor.permutation().forward()) {
+                    out.writeChar(x);
+                }
+                for (int x : rotor.permutation().inverse()) {
+                    out.writeChar(x);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the notches of ROTOR, as in a configuration file. */
+    private static String notches(Rotor rotor) {
+        return rotor instanceof MovingRotor
+            ? ((MovingRotor) rotor).notches() : "";
+    }
+
+    /** Return the type of ROTOR, as in a configuration file. */
+    private static char type(Rotor rotor) {
+        if (rotor.reflecting()) {
+            return 'R';
+        } else if (rotor.rotates()) {
+            return 'M';
+        } else {
+            return 'N';
+        }
+    }
+
+    /** Return the first slot to probe for NAME in a hash table of size
+     *  SIZE, a power of 2. */
+    private static int slot(String name, int size) {
+        int h = name.hashCode();
+        return (h ^ (h >>> HASH_SHIFT)) & (size - 1);
+    }
+
+    @Override
+    public Rotor rotor(String name) {
+        int r = find(name);
+        if (r < 0) {
+            return null;
+        }
+        return _built.computeIfAbsent(r, this::build);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return _count;
+    }
+
+    @Override
+    public List<String> names() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int r) {
+                return name(r);
+            }
+
+            @Override
+            public int size() {
+                return _count;
+            }
+        };
+    }
+
+    @Override
+    public Collection<Rotor> rotors() {
+        ArrayList<Rotor> result = new ArrayList<>(_count);
+        for (int r = 0; r < _count; r += 1) {
+            result.add(_built.computeIfAbsent(r, this::build));
+        }
+        return result;
+    }
+
+    /** Return the number of rotors built so far. */
+    int built() {
+        return _built.size();
+    }
+
+    /** Return the number of the first rotor named NAME, or -1 if there is
+     *  none. */
+    private int find(String name) {
+        int k = slot(name, _hashSize);
+        while (true) {
+            int r = _buffer.getInt((int) (_hashOffset + 4L * k)) - 1;
+            if (r < 0 || r >= _count) {
+                return -1;
+            } else if (nameEquals(r, name)) {
+                return r;
+            }
+            k = (k + 1) & (_hashSize - 1);
+        }
+    }
+
+    /** Return true iff rotor R is named NAME. */
+    private boolean nameEquals(int r, String name) {
+        int offset = field(r, NAME_OFFSET), len = field(r, NAME_LENGTH);
+        if (len != name.length()) {
+            return false;
+        }
+        checkRange(offset, len);
+        for (int i = 0; i < len; i += 1) {
+            if (_buffer.getChar(offset + 2 * i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the name of rotor R. */
+    private String name(int r) {
+        return chars(field(r, NAME_OFFSET), field(r, NAME_LENGTH));
+    }
+
+    /** Return rotor R, built from its record and tables. */
+    private Rotor build(int r) {
+        String name = name(r);
+        int n = _alphabet.size(), tables = field(r, TABLES_OFFSET);
+        checkRange(tables, 2 * n);
+        int[] forward = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            forward[i] = _buffer.getChar(tables + 2 * i);
+        }
+        Permutation perm;
+        try {
+            perm = new Permutation(forward, _alphabet);
+        } catch (EnigmaException excp) {
+            throw error("rotor library %s is corrupt", _name);
+        }
+        int[] inverse = perm.inverse();
+        for (int i = 0; i < n; i += 1) {
+            if (_buffer.getChar(tables + 2 * (n + i)) != inverse[i]) {
+                throw error("rotor library %s is corrupt", _name);
+            }
+        }
+        switch (field(r, TYPE)) {
+        case 'M':
+            return new MovingRotor(name, perm,
+                                   chars(field(r, NOTCHES_OFFSET),
+                                         field(r, NOTCHES_LENGTH)));
+        case 'N':
+            return new FixedRotor(name, perm);
+        default:
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** Return field FIELD of the record of rotor R. */
+    private int field(int r, int field) {
+        return _buffer.getInt((int) (_recordsOffset
+                                     + 4L * (RECORD_INTS * r + field)));
+    }
+
+    /** Return the LEN chars at byte OFFSET. */
+    private String chars(int offset, int len) {
+        checkRange(offset, len);
+        char[] result = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = _buffer.getChar(offset + 2 * i);
+        }
+        return new String(result);
+    }
+
+    /** Check that the LEN chars at byte OFFSET lie within the file. */
+    private void checkRange(int offset, int len) {
+        if (offset < 0 || len < 0 || offset + 2L * len > _buffer.limit()) {
+            throw error("rotor library %s is corrupt", _name);
+        }
+    }
+
+    /** First int of a compiled configuration file: a byte that is not
+     *  text in any encoding a configuration file could use, then "ERL",
+     *  so that no configuration file is taken for a compiled one. */
+    static final int MAGIC = 0x8945524C;
+
+    /** Version of the format that I read and write. */
+    static final int VERSION = 1;
+
+    /** Offsets of the fields of the header. */
+    private static final int VERSION_OFFSET = 4, SLOTS_OFFSET = 8,
+        PAWLS_OFFSET = 12, ALPHABET_SIZE_OFFSET = 16, COUNT_OFFSET = 20,
+        HASH_SIZE_OFFSET = 24, HEADER_SIZE = 28;
+
+    /** Indices of the fields of a rotor record. */
+    private static final int NAME_OFFSET = 0, NAME_LENGTH = 1, TYPE = 2,
+        NOTCHES_OFFSET = 3, NOTCHES_LENGTH = 4, TABLES_OFFSET = 5,
+        RECORD_INTS = 6;
+
+    /** Shift used to fold high hash bits into the low bits. */
+    private static final int HASH_SHIFT = 16;
+
+    /** Name of my file. */
+    private final String _name;
+
+    /** The contents of my file. */
+    private final ByteBuffer _buffer;
+
+    /** Number of rotor slots and of pawls of the machine. */
+    private final int _slots, _pawls;
+
+    /** Number of rotors. */
+    private final int _count;
+
+    /** Size of the hash table. */
+    private final int _hashSize;
+
+    /** Offsets of the hash table and of the records. */
+    private final long _hashOffset, _recordsOffset;
+
+    /** The alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** The rotors built so far, by number. */
+    private final ConcurrentHashMap<Integer, Rotor> _built =
+        new ConcurrentHashMap<>();
+}
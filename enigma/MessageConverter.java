@@ -0,0 +1,136 @@
+package enigma;
+
+/** Converts the message lines that follow a settings line and formats
+ *  them in groups of five, tracking how far into the message each line
+ *  starts.  Each instance has its own buffers, so separate instances may
+ *  be used by separate threads.
+ *  @author Chris Jereza
+ */
+class MessageConverter {
+
+    /** A converter of whole messages. */
+    MessageConverter() {
+        this(0, -1);
+    }
+
+    /** A converter of the characters FROM (inclusive) through TO
+     *  (exclusive) of each message, or of whole messages if TO is
+     *  negative. */
+    MessageConverter(long from, long to) {
+        _from = from;
+        _to = to;
+    }
+
+    /** Use M, which has just been set up, to convert the lines of a new
+     *  message. */
+    void start(Machine m) {
+        _machine = m;
+        _position = 0;
+    }
+
+    /** Convert MSG, the next line of the current message, and append it
+     *  to OUT as a line in groups of five (except that the last group may
+     *  have fewer letters).  When converting part of each message, lines
+     *  entirely outside the range append nothing. */
+    void convertLine(String msg, StringBuilder out) {
+        ensureBuffer(msg.length());
+        msg.getChars(0, msg.length(), _buffer, 0);
+        int n = convert(_buffer, 0, msg.length());
+        if (n >= 0) {
+            appendGroups(_buffer, 0, n, out);
+        }
+    }
+
+    /** Convert LINE[OFF .. OFF + LEN - 1], the next line of the current
+     *  message, in place, returning the number of converted characters,
+     *  which start at LINE[OFF].  When converting part of each message,
+     *  returns -1 for lines entirely outside the range. */
+    int convert(char[] line, int off, int len) {
+        if (_to >= 0) {
+            return convertRange(line, off, len);
+        } else if (len >= PARALLEL_THRESHOLD) {
+            if (_parallel == null) {
+                _parallel = new ParallelConverter();
+            }
+            return _parallel.convert(_machine, line, off, len, line, off);
+        } else {
+            return _machine.convert(line, off, len, line, off);
+        }
+    }
+
+    /** Convert the part of LINE[OFF .. OFF + LEN - 1] that lies in my
+     *  range in place, as for convert. */
+    private int convertRange(char[] line, int off, int len) {
+        int n = 0;
+        for (int i = off; i < off + len; i += 1) {
+            if (!Machine.isWhitespace(line[i])) {
+                line[off + n] = line[i];
+                n += 1;
+            }
+        }
+        long lineStart = _position;
+        _position += n;
+        int from = (int) Math.min(Math.max(_from - lineStart, 0), n);
+        int to = (int) Math.min(Math.max(_to - lineStart, 0), n);
+        if (from >= to) {
+            return -1;
+        }
+        _machine.seek(lineStart + from);
+        return _machine.convert(line, off + from, to - from, line, off);
+    }
+
+    /** Make sure _buffer holds at least SIZE characters. */
+    private void ensureBuffer(int size) {
+        if (_buffer.length < size) {
+            _buffer = new char[Math.max(size, 2 * _buffer.length)];
+        }
+    }
+
+    /** Append CHARS[OFF .. OFF + N - 1] to OUT as a line, in groups of
+     *  five. */
+    static void appendGroups(char[] chars, int off, int n,
+                             StringBuilder out) {
+        out.ensureCapacity(out.length() + n + n / 5 + LINE_END.length() + 1);
+        for (int i = 0; i < n; i += 1) {
+            out.append(chars[off + i]);
+            if ((i + 1) % 5 == 0 || i == n - 1) {
+                out.append(' ');
+            }
+        }
+        out.append(LINE_END);
+    }
+
+    /** Line terminator, as written by PrintStream.println. */
+    private static final String LINE_END = System.lineSeparator();
+
+    /** Most characters of a message line handed to convert at once by
+     *  readers that stream long lines in pieces, so that their memory use
+     *  does not grow with the length of the line.  A line with no '*' in
+     *  its first PIECE_SIZE characters is taken to be a message line. */
+    static final int PIECE_SIZE = 1 << 20;
+
+    /** Length of the shortest message line converted in parallel. */
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /** Initial size of _buffer. */
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /** Position of the first character of each message to convert. */
+    private final long _from;
+
+    /** Position just past the last character of each message to convert,
+     *  or -1 to convert all of it. */
+    private final long _to;
+
+    /** Machine converting the current message. */
+    private Machine _machine;
+
+    /** Number of message characters read since the message started. */
+    private long _position;
+
+    /** Reusable buffer holding the message line being converted. */
+    private char[] _buffer = new char[INITIAL_BUFFER_SIZE];
+
+    /** Converter for long message lines, created when first needed. */
+    private ParallelConverter _parallel;
+}
@@ -18,6 +18,35 @@ class MovingRotor extends Rotor {
             }
         }
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            int k = perm.alphabet().toInt(notches.charAt(i));
+            if (!_notchAt[k]) {
+                _notchAt[k] = true;
+                _notchCount += 1;
+            }
+        }
+        int n = perm.size();
+        _notchDistance = new int[n];
+        for (int p = 2 * n - 1; p >= 0; p -= 1) {
+            int q = p % n, r = (q + 1) % n;
+            _notchDistance[q] = _notchAt[r] ? 1 : _notchDistance[r] + 1;
+        }
+    }
+
+    /** A copy of ORIGINAL, sharing its notch tables, with a setting of its
+     *  own. */
+    MovingRotor(MovingRotor original) {
+        super(original);
+        _notches = original._notches;
+        _notchAt = original._notchAt;
+        _notchCount = original._notchCount;
+        _notchDistance = original._notchDistance;
+    }
+
+    @Override
+    MovingRotor copy() {
+        return new MovingRotor(this);
     }
 
     /** Turn rotor once. */
@@ -28,7 +57,20 @@ class MovingRotor extends Rotor {
 
     /** Returns true if rotor is at notch and should rotate. */
     boolean atNotch() {
-        return (notches().indexOf(alphabet().toChar(setting())) != -1);
+        return _notchAt[setting()];
+    }
+
+    /** Returns the number of distinct positions of my notches. */
+    @Override
+    int notchCount() {
+        return _notchCount;
+    }
+
+    /** Returns the least number of advances, at least 1, that bring me to
+     *  a notch, assuming I have one. */
+    @Override
+    int notchDistance() {
+        return _notchDistance[setting()];
     }
 
     /** Returns NOTCHES. */
@@ -43,4 +85,13 @@ class MovingRotor extends Rotor {
 
     /** String containing this rotor's notches. */
     private String _notches;
+
+    /** True at the index of each of my notches. */
+    private boolean[] _notchAt;
+
+    /** Number of distinct positions in _notchAt. */
+    private int _notchCount;
+
+    /** Value of notchDistance() at each setting. */
+    private int[] _notchDistance;
 }
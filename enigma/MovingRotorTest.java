@@ -71,4 +71,20 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkEverySetting() {
+        setRotor("VI", NAVALA, "ZM");
+        Permutation perm = rotor.permutation();
+        for (int s = 0; s < 26; s += 1) {
+            rotor.set(s);
+            for (int p = 0; p < 26; p += 1) {
+                int e = perm.wrap(perm.permute(p + s) - s);
+                assertEquals(msg("Rotor VI", "setting %d, contact %d", s, p),
+                             e, rotor.convertForward(p));
+                assertEquals(msg("Rotor VI", "setting %d, contact %d", s, e),
+                             p, rotor.convertBackward(e));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,274 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Scores text by how likely a language is to produce it, judging by
+ *  the frequencies of its n-grams: the runs of ORDER consecutive letters
+ *  for some ORDER from 1 (single letters) up.  The score of a text is
+ *  the sum of the base-10 logarithms of the probabilities of each of its
+ *  n-grams, so that it is greater the more the text looks like the
+ *  language, and is comparable only between texts of the same length.
+ *  N-grams never seen get a small floor probability rather than 0.
+ *
+ *  The probabilities are kept in one flat table with an entry for every
+ *  n-gram of the alphabet, indexed by the n-gram's letters read as the
+ *  digits of a number in base (alphabet size), so that scoring a text
+ *  is one table lookup per letter, and allocates nothing.  The table may
+ *  be built from counts or from sample text, or mapped from an n-gram
+ *  file, which is never read into the heap.
+ *
+ *  An n-gram file holds one table.  All numbers are big-endian, and all
+ *  characters UTF-16:
+ *    int MAGIC, int VERSION, int ORDER, int alphabet size N,
+ *    char[N] alphabet, padding to a multiple of 4 bytes,
+ *    float[N ** ORDER] log probabilities, by n-gram index.
+ *  @author Chris Jereza
+ */
+class NgramScorer implements Fitness {
+
+    /** A scorer for n-grams of ORDER letters in ALPHA, whose log
+     *  probabilities are TABLE, indexed as above. */
+    private NgramScorer(Alphabet alpha, int order, FloatBuffer table) {
+        _alphabet = alpha;
+        _order = order;
+        _table = table;
+        _prefixes = table.limit() / alpha.size();
+        _counts = new int[alpha.size()];
+    }
+
+    /** Return a scorer for n-grams of ORDER letters in ALPHA, where
+     *  COUNTS[I] is the number of times n-gram number I was seen. */
+    static NgramScorer fromCounts(Alphabet alpha, int order, long[] counts) {
+        if (counts.length != tableSize(alpha.size(), order)) {
+            throw error("n-gram counts have the wrong size");
+        }
+        double total = 0;
+        for (long count : counts) {
+            if (count < 0) {
+                throw error("n-gram counts must not be negative");
+            }
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams counted");
+        }
+        float floor = (float) Math.log10(FLOOR / total);
+        float[] table = new float[counts.length];
+        for (int i = 0; i < counts.length; i += 1) {
+            table[i] = counts[i] == 0 ? floor
+                : (float) Math.log10(counts[i] / total);
+        }
+        return new NgramScorer(alpha, order, FloatBuffer.wrap(table));
+    }
+
+    /** Return a scorer for n-grams of ORDER letters in ALPHA, with the
+     *  frequencies of the n-grams in TEXT[0 .. LEN - 1], given as alphabet
+     *  indices. */
+    static NgramScorer fromText(Alphabet alpha, int order, int[] text,
+                                int len) {
+        int n = alpha.size();
+        long[] counts = new long[tableSize(n, order)];
+        int prefixes = counts.length / n, index = 0;
+        for (int i = 0; i < len; i += 1) {
+            index = (index % prefixes) * n + text[i];
+            if (i >= order - 1) {
+                counts[index] += 1;
+            }
+        }
+        return fromCounts(alpha, order, counts);
+    }
+
+    /** Return the scorer in the n-gram file FILE, which must be for
+     *  ALPHA.  The file is mapped, not read. */
+    static NgramScorer load(File file, Alphabet alpha) {
+        String name = file.getPath();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("n-gram file %s is too large", name);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw error("%s is not an n-gram file", name);
+        }
+        if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw error("n-gram file %s has unknown version %d", name,
+                        buffer.getInt(VERSION_OFFSET));
+        }
+        int order = buffer.getInt(ORDER_OFFSET);
+        int n = buffer.getInt(ALPHABET_SIZE_OFFSET);
+        if (n != alpha.size() || buffer.limit() < HEADER_SIZE + 2L * n) {
+            throw error("n-gram file %s is for a different alphabet", name);
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (buffer.getChar(HEADER_SIZE + 2 * i) != alpha.toChar(i)) {
+                throw error("n-gram file %s is for a different alphabet",
+                            name);
+            }
+        }
+        int size = tableSize(n, order);
+        int offset = tableOffset(n);
+        if (offset + 4L * size != buffer.limit()) {
+            throw error("n-gram file %s is corrupt", name);
+        }
+        buffer.position(offset);
+        return new NgramScorer(alpha, order, buffer.slice().asFloatBuffer());
+    }
+
+    /** Write my table to FILE as an n-gram file. */
+    void write(File file) {
+        int n = _alphabet.size();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_order);
+            out.writeInt(n);
+            out.writeChars(_alphabet.string());
+            for (int i = HEADER_SIZE + 2 * n; i < tableOffset(n); i += 1) {
+                out.writeByte(0);
+            }
+            for (int i = 0; i < _table.limit(); i += 1) {
+                out.writeFloat(_table.get(i));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the number of entries in a table of n-grams of ORDER
+     *  letters from an alphabet of N letters. */
+    static int tableSize(int n, int order) {
+        if (order < 1) {
+            throw error("bad n-gram order: %d", order);
+        }
+        long size = 1;
+        for (int k = 0; k < order; k += 1) {
+            size *= n;
+            if (size > MAX_TABLE_SIZE) {
+                throw error("too many %d-grams of %d letters", order, n);
+            }
+        }
+        return (int) size;
+    }
+
+    /** Return the offset of the table in an n-gram file for an alphabet
+     *  of N letters. */
+    private static int tableOffset(int n) {
+        return (HEADER_SIZE + 2 * n + 3) & ~3;
+    }
+
+    /** Return the number of letters in each of my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the log probability of the n-gram whose letters, as
+     *  alphabet indices, are NGRAM[0 .. order() - 1]. */
+    double logProbability(int... ngram) {
+        int index = 0;
+        for (int k = 0; k < _order; k += 1) {
+            index = index * _alphabet.size() + ngram[k];
+        }
+        return _table.get(index);
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        return score(text, 0, len);
+    }
+
+    /** Return the score of the LEN alphabet indices TEXT[OFF .. OFF + LEN
+     *  - 1]: the sum of the log probabilities of its n-grams, or 0 if it
+     *  is shorter than one n-gram.  Allocates nothing. */
+    double score(int[] text, int off, int len) {
+        if (len < _order) {
+            return 0.0;
+        }
+        int n = _alphabet.size(), index = 0, first = off + _order - 1;
+        for (int i = off; i < first; i += 1) {
+            index = index * n + text[i];
+        }
+        double result = 0;
+        for (int i = first, k = off; i < off + len; i += 1, k += 1) {
+            index = index * n + text[i];
+            result += _table.get(index);
+            index -= text[k] * _prefixes;
+        }
+        return result;
+    }
+
+    /** Store in SCORES[0 .. COUNT - 1] the scores of the COUNT texts of
+     *  LEN alphabet indices each that lie one after another in TEXTS,
+     *  starting at TEXTS[0].  Allocates nothing. */
+    void scoreAll(int[] texts, int len, int count, double[] scores) {
+        for (int t = 0, off = 0; t < count; t += 1, off += len) {
+            scores[t] = score(texts, off, len);
+        }
+    }
+
+    /** Return the index of coincidence of the LEN alphabet indices
+     *  TEXT[OFF .. OFF + LEN - 1] (see CoincidenceScorer), for use
+     *  alongside the n-gram score.  Allocates nothing. */
+    double coincidence(int[] text, int off, int len) {
+        return CoincidenceScorer.indexOfCoincidence(text, off, len, _counts);
+    }
+
+    @Override
+    public NgramScorer copy() {
+        return new NgramScorer(_alphabet, _order, _table.duplicate());
+    }
+
+    /** First int of every n-gram file. */
+    static final int MAGIC = 0x454e4e47;
+
+    /** Version of the n-gram file format. */
+    static final int VERSION = 1;
+
+    /** Offsets of the fields of the header. */
+    private static final int VERSION_OFFSET = 4, ORDER_OFFSET = 8,
+        ALPHABET_SIZE_OFFSET = 12, HEADER_SIZE = 16;
+
+    /** Largest number of entries in a table. */
+    private static final int MAX_TABLE_SIZE = (Integer.MAX_VALUE - 64) / 4;
+
+    /** Count, relative to the total count, assumed for n-grams never
+     *  seen. */
+    private static final double FLOOR = 0.01;
+
+    /** Alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Number of letters in each n-gram. */
+    private final int _order;
+
+    /** Log probability of each n-gram, by index. */
+    private final FloatBuffer _table;
+
+    /** Number of (ORDER - 1)-grams, by which an index is reduced before
+     *  adding a letter to it. */
+    private final int _prefixes;
+
+    /** Counts of each index, for coincidence. */
+    private final int[] _counts;
+}
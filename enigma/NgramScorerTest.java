@@ -0,0 +1,145 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the n-gram scorer.
+ *  @author Chris Jereza
+ */
+public class NgramScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return TEXT as indices in UPPER. */
+    private static int[] indices(String text) {
+        return KeySearch.ciphertext(text, UPPER);
+    }
+
+    /** Return a scorer for the ORDER-grams of the test plaintext. */
+    private static NgramScorer trained(int order) {
+        int[] text = indices(KeySearchTest.PLAINTEXT);
+        return NgramScorer.fromText(UPPER, order, text, text.length);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScores() {
+        NgramScorer bigrams = trained(2);
+        assertEquals(2, bigrams.order());
+        assertTrue(bigrams.logProbability(indices("TH"))
+                   > bigrams.logProbability(indices("HT")));
+        assertEquals(bigrams.logProbability(indices("QZ")),
+                     bigrams.logProbability(indices("ZQ")), 0.0);
+        int[] english = indices("THEFOLDEDHANDS"),
+            scrambled = indices("HTFEODLDEHNADS");
+        NgramScorer quadgrams = trained(4);
+        for (NgramScorer scorer : new NgramScorer[] { trained(1), bigrams,
+                                                      trained(3),
+                                                      quadgrams }) {
+            assertTrue(scorer.score(english, english.length)
+                       >= scorer.score(scrambled, scrambled.length));
+        }
+        assertTrue(quadgrams.score(english, english.length)
+                   > quadgrams.score(scrambled, scrambled.length));
+        assertEquals(0.0, quadgrams.score(english, 3), 0.0);
+        assertEquals(bigrams.logProbability(indices("TH"))
+                     + bigrams.logProbability(indices("HE")),
+                     bigrams.score(indices("XTHE"), 1, 3), 1e-9);
+    }
+
+    @Test
+    public void checkBulk() {
+        NgramScorer scorer = trained(3);
+        String[] texts = { "FROMHISSHOULDER", "HIAWATHATOOKTHE",
+                           "QQQQQQQQQQQQQQQ", "CAMERAOFROSEWOO" };
+        int len = texts[0].length();
+        int[] buffer = indices(String.join("", texts));
+        double[] scores = new double[texts.length];
+        scorer.scoreAll(buffer, len, texts.length, scores);
+        int[] counts = new int[UPPER.size()];
+        for (int t = 0; t < texts.length; t += 1) {
+            int[] text = indices(texts[t]);
+            assertEquals(scorer.score(text, len), scores[t], 1e-9);
+            assertEquals(CoincidenceScorer.indexOfCoincidence(text, len,
+                                                              counts),
+                         scorer.coincidence(buffer, t * len, len), 1e-12);
+        }
+        assertEquals(1.0, scorer.coincidence(buffer, 2 * len, len), 0.0);
+    }
+
+    @Test
+    public void checkCounts() {
+        NgramScorer scorer =
+            CompileNgrams.fromCounts(UPPER, "TH 30\nhe 10\n\n  AN 60\n");
+        assertEquals(Math.log10(0.3),
+                     scorer.logProbability(indices("TH")), 1e-6);
+        assertEquals(Math.log10(0.0001),
+                     scorer.logProbability(indices("QU")), 1e-6);
+        try {
+            CompileNgrams.fromCounts(UPPER, "TH 30\nTHE 10\n");
+            fail("mixed orders accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("bad n-gram line 2: THE 10", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkFile() throws IOException {
+        NgramScorer scorer = trained(4);
+        File file = File.createTempFile("enigma", ".ngr");
+        try {
+            scorer.write(file);
+            NgramScorer mapped = NgramScorer.load(file, UPPER);
+            assertEquals(4, mapped.order());
+            int[] text = indices(KeySearchTest.PLAINTEXT);
+            assertEquals(scorer.score(text, text.length),
+                         mapped.copy().score(text, text.length), 0.0);
+            try {
+                NgramScorer.load(file, new Alphabet("ABC"));
+                fail("wrong alphabet accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("different alphabet"));
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 4);
+            }
+            try {
+                NgramScorer.load(file, UPPER);
+                fail("truncated file accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("is corrupt"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkSearch() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        String key = "* B III I KD (AT) (OS)";
+        String ciphertext = KeySearchTest.convert(spec, key,
+                                                  KeySearchTest.PLAINTEXT);
+        KeySearch search =
+            new KeySearch(spec, KeySearch.ciphertext(ciphertext, UPPER),
+                          new CoincidenceScorer(UPPER.size()));
+        search.setClimbFitness(trained(4));
+        search.setThreads(2);
+        List<KeyCandidate> keys = search.search();
+        assertEquals(key, keys.get(0).settings());
+    }
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long messages by dividing them into chunks that are converted
+ *  concurrently in a ForkJoinPool.  Since the rotor positions at any
+ *  point of a message are determined by the starting setting, each chunk
+ *  is converted by a copy of the machine sought to the chunk's start, and
+ *  the result is identical to that of converting serially.
+ *  @author Chris Jereza
+ */
+class ParallelConverter {
+
+    /** A converter that runs in POOL, splitting the work until each task
+     *  has at most CHUNK characters. */
+    ParallelConverter(ForkJoinPool pool, int chunk) {
+        if (chunk < 1) {
+            throw new EnigmaException("Chunk size must be positive.");
+        }
+        _pool = pool;
+        _chunk = chunk;
+    }
+
+    /** A converter that runs in the common pool with the default chunk
+     *  size. */
+    ParallelConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF as
+     *  M.convert(IN, OFF, LEN, OUT, OUTOFF) would, storing the results in
+     *  OUT starting at OUTOFF and leaving M advanced past them.  Returns
+     *  the number of characters stored.  IN and OUT may be the same array
+     *  as long as OUTOFF <= OFF. */
+    int convert(Machine m, char[] in, int off, int len,
+                char[] out, int outOff) {
+        Alphabet alphabet = m.alphabet();
+        int n = 0;
+        for (int i = off; i < off + len; i += 1) {
+            char c = in[i];
+            if (!Machine.isWhitespace(c)) {
+                c = Character.toUpperCase(c);
+                alphabet.toInt(c);
+                out[outOff + n] = c;
+                n += 1;
+            }
+        }
+        long start = m.position();
+        _pool.invoke(new Chunk(m, start, out, outOff, outOff + n));
+        m.seek(start + n);
+        return n;
+    }
+
+    /** Conversion of the characters of a buffer between two indices,
+     *  which the machine it was given would reach after a known number
+     *  of advances. */
+    private class Chunk extends RecursiveAction {
+
+        /** Converts BUF[LO .. HI-1] in place, where BUF[BASE] would be
+         *  converted by M after START advances. */
+        Chunk(Machine m, long start, char[] buf, int base, int lo, int hi) {
+            _m = m;
+            _start = start;
+            _buf = buf;
+            _base = base;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        /** Converts BUF[LO .. HI-1] in place, where BUF[LO] would be
+         *  converted by M after START advances. */
+        Chunk(Machine m, long start, char[] buf, int lo, int hi) {
+            this(m, start, buf, lo, lo, hi);
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= _chunk) {
+                Machine copy = _m.copy();
+                copy.seek(_start + _lo - _base);
+                copy.convert(_buf, _lo, _hi - _lo, _buf, _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Chunk(_m, _start, _buf, _base, _lo, mid),
+                          new Chunk(_m, _start, _buf, _base, mid, _hi));
+            }
+        }
+
+        /** Machine whose copies do the conversions. */
+        private final Machine _m;
+        /** Number of advances of _m at which _buf[_base] is converted. */
+        private final long _start;
+        /** Characters being converted. */
+        private final char[] _buf;
+        /** Index of the first character of the whole message in _buf. */
+        private final int _base;
+        /** Bounds of my characters in _buf. */
+        private final int _lo, _hi;
+    }
+
+    /** Default maximum number of characters converted by one task. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** Pool running the conversions. */
+    private final ForkJoinPool _pool;
+
+    /** Maximum number of characters converted by one task: larger
+     *  ranges are split in two. */
+    private final int _chunk;
+}
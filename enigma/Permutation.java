@@ -1,6 +1,5 @@
 package enigma;
 import java.util.ArrayList;
-import java.util.HashMap;
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -17,24 +16,56 @@ class Permutation {
         _cyclesString = cycles;
         _alphabet = alphabet;
         _size = alphabet().size();
-        _cycles = new HashMap<>();
-        if (cycles.equals("")) {
-            _cycles = null;
-        } else {
+        _forward = new int[_size];
+        _inverse = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _forward[i] = -1;
+        }
+        if (!cycles.equals("")) {
             setCycles(cycles);
         }
+        for (int i = 0; i < _size; i += 1) {
+            if (_forward[i] == -1) {
+                _forward[i] = i;
+            }
+            _inverse[_forward[i]] = i;
+        }
+    }
+
+    /** A permutation of the indices of ALPHABET taking each index I to
+     *  FORWARD[I].  FORWARD becomes mine, and must not be changed
+     *  afterwards. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        if (forward.length != _size) {
+            throw new EnigmaException("Permutation has wrong size.");
+        }
+        _forward = forward;
+        _inverse = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _inverse[i] = -1;
+        }
+        for (int i = 0; i < _size; i += 1) {
+            if (forward[i] < 0 || forward[i] >= _size
+                || _inverse[forward[i]] != -1) {
+                throw new EnigmaException("Cannot have duplicates.");
+            }
+            _inverse[forward[i]] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length() - 1; i += 1) {
-            String value = Character.toString(cycle.charAt(i + 1));
-            _cycles.put(Character.toString(cycle.charAt(i)), value);
+    private void addCycle(ArrayList<Character> cycle) {
+        for (int k = 0; k < cycle.size(); k += 1) {
+            int from = _alphabet.toInt(cycle.get(k));
+            int to = _alphabet.toInt(cycle.get((k + 1) % cycle.size()));
+            if (_forward[from] != -1) {
+                throw new EnigmaException("Cannot have duplicates.");
+            }
+            _forward[from] = to;
         }
-        String last = Character.toString(cycle.charAt(cycle.length() - 1));
-        String first = Character.toString(cycle.charAt(0));
-        _cycles.put(last, first);
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -46,29 +77,20 @@ class Permutation {
         return r;
     }
 
-    /** Separate CYCLES string into arrays and store in cycles[][]. */
+    /** Separate CYCLES string into cycles and compile each into the
+     *  forward table. */
     private void setCycles(String cycles) {
-        String last = null;
-        int size = 0;
-        ArrayList<String> currentCycle = new ArrayList<>();
+        ArrayList<Character> currentCycle = new ArrayList<>();
         for (int i = 0; i < cycles.length(); i += 1) {
-            if (cycles.charAt(i) == '(') {
+            char c = cycles.charAt(i);
+            if (c == '(') {
                 currentCycle = new ArrayList<>();
-            } else if (cycles.charAt(i) == ')') {
-                for (int k = 0; k < currentCycle.size() - 1; k += 1) {
-                    if (_cycles.containsKey(currentCycle.get(k))) {
-                        throw new EnigmaException("Cannot have duplicates.");
-                    }
-                    _cycles.put(currentCycle.get(k), currentCycle.get(k + 1));
+            } else if (c == ')') {
+                if (!currentCycle.isEmpty()) {
+                    addCycle(currentCycle);
                 }
-                if (_cycles.containsKey(last)) {
-                    throw new EnigmaException("Cannot have duplicates");
-                }
-                _cycles.put(last, currentCycle.get(0));
-            } else if (cycles.charAt(i) != ' ') {
-                last =  Character.toString(cycles.charAt(i));
-                currentCycle.add(last);
-                size += 1;
+            } else if (c != ' ') {
+                currentCycle.add(c);
             }
         }
     }
@@ -81,40 +103,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return wrap(alphabet().toInt(permute(_alphabet.toChar(p))));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        if (_cycles == null) {
-            return c;
-        }
-        int index = c % alphabet().size();
-        for (String key : _cycles.keySet()) {
-            if (alphabet().toChar(index) == _cycles.get(key).charAt(0)) {
-                return wrap(_alphabet.toInt(key.charAt(0)));
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (_cycles == null) {
-            return p;
-        }
-        if (_cycles.containsKey(Character.toString(p))) {
-            return _cycles.get(Character.toString(p)).charAt(0);
-        } else {
-            return p;
-        }
+        return alphabet().toChar(_forward[alphabet().toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return alphabet().toChar(invert(alphabet().toInt(c)));
+        return alphabet().toChar(_inverse[alphabet().toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -125,21 +131,54 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (String key : _cycles.keySet()) {
-            if (key.equals(_cycles.get(key))) {
+        for (int i = 0; i < _size; i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff this permutation maps every index to itself. */
+    boolean identity() {
+        for (int i = 0; i < _size; i += 1) {
+            if (_forward[i] != i) {
                 return false;
             }
         }
         return true;
     }
 
-    /** Return Mapping of CYCLES. */
-    HashMap<String, String> cycles() {
-        return _cycles;
+    /** Return my forward table, mapping each index to its image.  The
+     *  array is shared, and must not be modified. */
+    int[] forward() {
+        return _forward;
     }
 
-    /** Return String representation of CYCLES. */
+    /** Return my inverse table, mapping each index to its preimage.  The
+     *  array is shared, and must not be modified. */
+    int[] inverse() {
+        return _inverse;
+    }
+
+    /** Return String representation of CYCLES.  For a permutation made
+     *  from a table, these are its cycles of more than one element. */
     String cyclesString() {
+        if (_cyclesString == null) {
+            StringBuilder cycles = new StringBuilder();
+            boolean[] done = new boolean[_size];
+            for (int i = 0; i < _size; i += 1) {
+                if (!done[i] && _forward[i] != i) {
+                    cycles.append(cycles.length() == 0 ? "(" : " (");
+                    for (int k = i; !done[k]; k = _forward[k]) {
+                        done[k] = true;
+                        cycles.append(_alphabet.toChar(k));
+                    }
+                    cycles.append(')');
+                }
+            }
+            _cyclesString = cycles.toString();
+        }
         return _cyclesString;
     }
 
@@ -149,10 +188,12 @@ class Permutation {
     /** Size of this permutation. */
     private int _size;
 
-    /** HashMap containing cycles (mappings). */
-    private HashMap<String, String> _cycles;
+    /** Image of each index under this permutation. */
+    private int[] _forward;
+
+    /** Image of each index under the inverse of this permutation. */
+    private int[] _inverse;
 
     /** String representing cycles. */
     private String _cyclesString;
 }
-
@@ -0,0 +1,191 @@
+package enigma;
+
+/** A bounded, least-recently-used cache of permutation tables keyed by
+ *  long values.  Tables of evicted entries are recycled for new entries,
+ *  so once the cache is full, it allocates nothing.
+ *  @author Chris Jereza
+ */
+class PermutationCache {
+
+    /** A cache holding at most CAPACITY tables, each of length SIZE. */
+    PermutationCache(int capacity, int size) {
+        if (capacity < 1) {
+            throw new EnigmaException("Cache capacity must be positive.");
+        }
+        _size = size;
+        _keys = new long[capacity];
+        _tables = new int[capacity][];
+        _newer = new int[capacity];
+        _older = new int[capacity];
+        _chain = new int[capacity];
+        _buckets = new int[Integer.highestOneBit(capacity) * 4];
+        clear();
+        _hits = _misses = _evictions = 0;
+    }
+
+    /** Returns the table stored under KEY, or null if there is none.
+     *  Marks the entry as most recently used. */
+    int[] get(long key) {
+        for (int e = _buckets[bucket(key)] - 1; e >= 0; e = _chain[e] - 1) {
+            if (_keys[e] == key) {
+                _hits += 1;
+                touch(e);
+                return _tables[e];
+            }
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Returns a table of length size() to be stored under KEY, which must
+     *  not be present.  The caller fills in its contents.  Evicts the
+     *  least recently used entry if I am full. */
+    int[] add(long key) {
+        int e;
+        if (_count < _keys.length) {
+            e = _count;
+            _count += 1;
+            _tables[e] = new int[_size];
+        } else {
+            e = _oldest;
+            unlinkBucket(e);
+            unlinkAge(e);
+            _evictions += 1;
+        }
+        _keys[e] = key;
+        int b = bucket(key);
+        _chain[e] = _buckets[b];
+        _buckets[b] = e + 1;
+        linkNewest(e);
+        return _tables[e];
+    }
+
+    /** Remove all entries, keeping my counters, which describe my use
+     *  over my whole lifetime. */
+    void clear() {
+        for (int b = 0; b < _buckets.length; b += 1) {
+            _buckets[b] = 0;
+        }
+        _count = 0;
+        _newest = _oldest = -1;
+    }
+
+    /** Returns the maximum number of entries I hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Returns the number of entries I hold. */
+    int count() {
+        return _count;
+    }
+
+    /** Returns the number of successful calls to get. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of unsuccessful calls to get. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Returns the number of entries discarded to make room. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Returns the bucket for KEY. */
+    private int bucket(long key) {
+        long h = key * HASH_MULTIPLIER;
+        return (int) (h ^ (h >>> HASH_SHIFT)) & (_buckets.length - 1);
+    }
+
+    /** Make entry E the most recently used. */
+    private void touch(int e) {
+        if (e != _newest) {
+            unlinkAge(e);
+            linkNewest(e);
+        }
+    }
+
+    /** Put entry E at the newest end of the age list. */
+    private void linkNewest(int e) {
+        _older[e] = _newest;
+        _newer[e] = -1;
+        if (_newest != -1) {
+            _newer[_newest] = e;
+        }
+        _newest = e;
+        if (_oldest == -1) {
+            _oldest = e;
+        }
+    }
+
+    /** Remove entry E from the age list. */
+    private void unlinkAge(int e) {
+        if (_older[e] != -1) {
+            _newer[_older[e]] = _newer[e];
+        } else {
+            _oldest = _newer[e];
+        }
+        if (_newer[e] != -1) {
+            _older[_newer[e]] = _older[e];
+        } else {
+            _newest = _older[e];
+        }
+    }
+
+    /** Remove entry E from its bucket's chain. */
+    private void unlinkBucket(int e) {
+        int b = bucket(_keys[e]);
+        if (_buckets[b] == e + 1) {
+            _buckets[b] = _chain[e];
+            return;
+        }
+        int p = _buckets[b] - 1;
+        while (_chain[p] != e + 1) {
+            p = _chain[p] - 1;
+        }
+        _chain[p] = _chain[e];
+    }
+
+    /** Multiplier used to spread keys across buckets. */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Shift used to fold high hash bits into the low bits. */
+    private static final int HASH_SHIFT = 29;
+
+    /** Length of each table. */
+    private final int _size;
+
+    /** Key of each entry. */
+    private final long[] _keys;
+
+    /** Table of each entry. */
+    private final int[][] _tables;
+
+    /** Next more recently used entry of each entry, or -1. */
+    private final int[] _newer;
+
+    /** Next less recently used entry of each entry, or -1. */
+    private final int[] _older;
+
+    /** One more than the next entry in the same bucket, or 0. */
+    private final int[] _chain;
+
+    /** One more than the first entry in each bucket, or 0. */
+    private final int[] _buckets;
+
+    /** Number of entries in use. */
+    private int _count;
+
+    /** Most recently used entry, or -1. */
+    private int _newest;
+
+    /** Least recently used entry, or -1. */
+    private int _oldest;
+
+    /** Counters reported by hits, misses, and evictions. */
+    private long _hits, _misses, _evictions;
+}
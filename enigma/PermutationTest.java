@@ -51,4 +51,24 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkOutOfRangeIndex() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals(perm.permute(0), perm.permute(26));
+        assertEquals(perm.invert(25), perm.invert(-1));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateCycles() {
+        perm = new Permutation("(AB) (CA)", UPPER);
+    }
+
 }
@@ -0,0 +1,316 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine to the lines of its input in three stages, each on
+ *  a thread of its own: one reads batches of lines, one converts them and
+ *  one formats and writes the results.  The stages pass a fixed set of
+ *  reusable batches around a ring of bounded queues, so that a slow stage
+ *  holds up the others rather than letting unwritten lines pile up.
+ *  @author Chris Jereza
+ */
+class Pipeline {
+
+    /** A pipeline converting the lines read by INPUT with MACHINE,
+     *  writing them to OUTPUT.  SETUP sets MACHINE up from a settings
+     *  line, and CONVERTER converts each line of a message.  DEPTH batches
+     *  circulate between the stages. */
+    Pipeline(LineSource input, Machine machine, Consumer<String> setUp,
+             MessageConverter converter, GroupedWriter output, int depth) {
+        _input = input;
+        _machine = machine;
+        _setUp = setUp;
+        _converter = converter;
+        _output = output;
+        _free = new ArrayBlockingQueue<>(depth);
+        _read = new ArrayBlockingQueue<>(depth);
+        _converted = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i += 1) {
+            _free.add(new Batch());
+        }
+    }
+
+    /** A pipeline as above with a default number of batches. */
+    Pipeline(LineSource input, Machine machine, Consumer<String> setUp,
+             MessageConverter converter, GroupedWriter output) {
+        this(input, machine, setUp, converter, output, DEFAULT_DEPTH);
+    }
+
+    /** Convert all my input, writing the results as it goes.  Throws the
+     *  first error met by any stage, after writing the lines that
+     *  precede it. */
+    void run() {
+        Thread reader = new Thread(this::readLines, "enigma-reader");
+        Thread converter = new Thread(this::convertLines, "enigma-converter");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        reader.start();
+        converter.start();
+        try {
+            writeLines();
+        } finally {
+            reader.interrupt();
+            converter.interrupt();
+        }
+    }
+
+    /** The reading stage: fill batches with lines of input until it runs
+     *  out or a read fails. */
+    private void readLines() {
+        try {
+            boolean more = true;
+            while (more) {
+                Batch batch = _free.take();
+                batch.clear();
+                try {
+                    more = fill(batch);
+                } catch (RuntimeException | Error excp) {
+                    batch.error = excp;
+                    more = false;
+                }
+                batch.last = !more;
+                _read.put(batch);
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Read lines into BATCH until it is full or no more input is ready,
+     *  returning false if the input ran out.  A message line too long
+     *  to fit is split into pieces in successive batches. */
+    private boolean fill(Batch batch) {
+        while (batch.count < MAX_LINES && batch.length < BATCH_SIZE) {
+            if (!_continuing && !_input.nextLine()) {
+                return false;
+            }
+            int start = batch.length;
+            int max = MessageConverter.PIECE_SIZE;
+            while (true) {
+                batch.reserve(MIN_READ);
+                int n = _input.read(batch.text, batch.length,
+                                    Math.min(batch.text.length - batch.length,
+                                             start + max - batch.length));
+                if (n == -1) {
+                    break;
+                }
+                batch.length += n;
+                if (batch.length - start == max) {
+                    if (_continuing || !batch.hasStar(start)) {
+                        break;
+                    }
+                    max = Integer.MAX_VALUE - start;
+                }
+            }
+            boolean partial = !_input.atLineEnd();
+            batch.add(start, _continuing, partial);
+            _continuing = partial;
+            if (partial || !_input.ready()) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** The converting stage: convert each batch of lines in place, until
+     *  the last batch or an error. */
+    private void convertLines() {
+        try {
+            boolean more = true;
+            while (more) {
+                Batch batch = _read.take();
+                more = !batch.last && batch.error == null;
+                try {
+                    convert(batch);
+                } catch (RuntimeException | Error excp) {
+                    batch.error = excp;
+                    more = false;
+                }
+                _converted.put(batch);
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Convert the lines of BATCH in place.  On an error, leave BATCH
+     *  holding only the lines that precede it. */
+    private void convert(Batch batch) {
+        for (int i = 0; i < batch.count; i += 1) {
+            try {
+                convertLine(batch, i);
+            } catch (RuntimeException | Error excp) {
+                batch.count = i;
+                throw excp;
+            }
+        }
+    }
+
+    /** Convert line I of BATCH in place. */
+    private void convertLine(Batch batch, int i) {
+        int start = batch.starts[i], len = batch.lengths[i];
+        if (batch.continued[i] && batch.settings[i]) {
+            throw error("settings line too long");
+        } else if (batch.settings[i]) {
+            _setUp.accept(new String(batch.text, start, len));
+            _converter.start(_machine);
+            _set = true;
+            batch.lengths[i] = -1;
+        } else if (!_set) {
+            throw new EnigmaException("Input must begin with Setting.");
+        } else {
+            batch.lengths[i] = _converter.convert(batch.text, start, len);
+        }
+    }
+
+    /** The writing stage: write each converted batch, returning it to
+     *  the readers, until the last one.  Throws any error that ended
+     *  the conversion. */
+    private void writeLines() {
+        while (true) {
+            Batch batch;
+            try {
+                batch = _converted.take();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            for (int i = 0; i < batch.count; i += 1) {
+                if (batch.lengths[i] >= 0) {
+                    _output.write(batch.text, batch.starts[i],
+                                  batch.lengths[i]);
+                    _printed = true;
+                }
+                if (_printed && !batch.partial[i]) {
+                    _output.endLine();
+                    _printed = false;
+                }
+            }
+            if (batch.error instanceof RuntimeException) {
+                throw (RuntimeException) batch.error;
+            } else if (batch.error != null) {
+                throw (Error) batch.error;
+            } else if (batch.last) {
+                return;
+            }
+            _free.add(batch);
+        }
+    }
+
+    /** A run of consecutive lines of input, stored one after another in
+     *  a single array. */
+    private static class Batch {
+
+        /** Forget all my lines. */
+        void clear() {
+            length = count = 0;
+            last = false;
+            error = null;
+        }
+
+        /** Make room for at least N more characters of text. */
+        void reserve(int n) {
+            if (text.length - length < n) {
+                char[] bigger = new char[Math.max(2 * text.length,
+                                                  length + n)];
+                System.arraycopy(text, 0, bigger, 0, length);
+                text = bigger;
+            }
+        }
+
+        /** Record the text from START to the end of TEXT as my next
+         *  line, which is the continuation of the last line of the
+         *  previous batch iff CONTINUED, and continues in the next batch
+         *  iff PARTIAL. */
+        void add(int start, boolean continued, boolean partial) {
+            starts[count] = start;
+            lengths[count] = length - start;
+            settings[count] = hasStar(start);
+            this.continued[count] = continued;
+            this.partial[count] = partial;
+            count += 1;
+        }
+
+        /** Return true iff the text from START to the end of TEXT contains
+         *  a '*'. */
+        boolean hasStar(int start) {
+            for (int i = start; i < length; i += 1) {
+                if (text[i] == '*') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** The characters of my lines are text[0 .. length - 1]. */
+        private char[] text = new char[BATCH_SIZE + MIN_READ];
+        /** Number of characters in text. */
+        private int length;
+        /** Number of lines. */
+        private int count;
+        /** Line I starts at text[starts[I]]. */
+        private final int[] starts = new int[MAX_LINES];
+        /** Length of line I: once converted, the number of characters
+         *  to write, or -1 if it is to write nothing. */
+        private final int[] lengths = new int[MAX_LINES];
+        /** True for the settings lines. */
+        private final boolean[] settings = new boolean[MAX_LINES];
+        /** True for the pieces of lines begun in the previous batch. */
+        private final boolean[] continued = new boolean[MAX_LINES];
+        /** True for the pieces of lines that go on in the next batch. */
+        private final boolean[] partial = new boolean[MAX_LINES];
+        /** True iff this is the last batch. */
+        private boolean last;
+        /** The exception or error that ended the input after my lines,
+         *  if any. */
+        private Throwable error;
+    }
+
+    /** Default number of batches in circulation. */
+    static final int DEFAULT_DEPTH = 4;
+
+    /** Number of characters after which a batch takes no more lines. */
+    private static final int BATCH_SIZE = 1 << 16;
+
+    /** Most lines in a batch. */
+    private static final int MAX_LINES = 1024;
+
+    /** Least room for characters offered to each read. */
+    private static final int MIN_READ = 1 << 12;
+
+    /** Source of lines. */
+    private final LineSource _input;
+
+    /** Machine applied to the messages. */
+    private final Machine _machine;
+
+    /** Sets _machine up from a settings line. */
+    private final Consumer<String> _setUp;
+
+    /** Converts the lines of each message. */
+    private final MessageConverter _converter;
+
+    /** Destination of converted lines. */
+    private final GroupedWriter _output;
+
+    /** True once _machine has been set up. */
+    private boolean _set;
+
+    /** True iff the reader has read only part of the current line. */
+    private boolean _continuing;
+
+    /** True iff the writer has written part of the current line. */
+    private boolean _printed;
+
+    /** Batches waiting to be filled. */
+    private final BlockingQueue<Batch> _free;
+
+    /** Batches waiting to be converted. */
+    private final BlockingQueue<Batch> _read;
+
+    /** Batches waiting to be written. */
+    private final BlockingQueue<Batch> _converted;
+}
@@ -0,0 +1,49 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Chris Jereza
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkUnexpectedFailure() {
+        Machine machine = ServiceTest.navalSpec().newMachine();
+        int[] settings = new int[1];
+        Pipeline pipeline =
+            new Pipeline(new LineReader(new StringReader(
+                             "* B BETA III IV I AXLE\nHELLO\n"
+                             + "* B BETA III IV I AXLE\nWORLD\n")),
+                         machine, (line) -> {
+                             settings[0] += 1;
+                             if (settings[0] > 1) {
+                                 throw new IllegalStateException("broken");
+                             }
+                             Main.setUp(machine, line);
+                         },
+                         new MessageConverter(),
+                         new GroupedWriter(new ByteArrayOutputStream(),
+                                           StandardCharsets.UTF_8, 64,
+                                           false));
+        try {
+            pipeline.run();
+            fail("pipeline did not fail");
+        } catch (IllegalStateException excp) {
+            assertEquals("broken", excp.getMessage());
+        }
+    }
+}
@@ -13,6 +13,16 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A copy of ORIGINAL. */
+    Reflector(Reflector original) {
+        super(original);
+    }
+
+    @Override
+    Reflector copy() {
+        return new Reflector(this);
+    }
+
     /** Return TRUE because this rotor is an instance of Reflector. */
     boolean reflecting() {
         return true;
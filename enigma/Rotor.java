@@ -11,6 +11,31 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        int n = perm.size();
+        _forward = doubled(perm.forward());
+        _backward = doubled(perm.inverse());
+        _wrap = new int[2 * n];
+        for (int i = 0; i < 2 * n; i += 1) {
+            _wrap[i] = i % n;
+        }
+        _offset = n;
+    }
+
+    /** A rotor with the same name, wiring and setting as ORIGINAL, sharing
+     *  its tables, but with a setting of its own. */
+    Rotor(Rotor original) {
+        _name = original._name;
+        _permutation = original._permutation;
+        _forward = original._forward;
+        _backward = original._backward;
+        _wrap = original._wrap;
+        _setting = original._setting;
+        _offset = original._offset;
+    }
+
+    /** Return a copy of me whose setting changes independently of mine. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Return my name. */
@@ -51,6 +76,7 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = permutation().wrap(posn);
+        _offset = size() - _setting;
     }
 
     /** Set setting() to character CPOSN. */
@@ -60,14 +86,14 @@ class Rotor {
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
-    int convertForward(int p) {
-        return wrap(permutation().permute(wrap(p + setting())) - setting());
+    final int convertForward(int p) {
+        return _wrap[_forward[p + _setting] + _offset];
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        return wrap(permutation().invert(wrap(e + setting())) - setting());
+    final int convertBackward(int e) {
+        return _wrap[_backward[e + _setting] + _offset];
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -76,6 +102,18 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of distinct positions at which I am at a notch.
+     *  By default, I have none. */
+    int notchCount() {
+        return 0;
+    }
+
+    /** Return the least number of advances, at least 1, that bring me to
+     *  a notch, assuming notchCount() > 0. */
+    int notchDistance() {
+        throw error("rotor %s has no notches", _name);
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -85,9 +123,13 @@ class Rotor {
         return "Rotor " + _name;
     }
 
-    /** Return the value of P wrapped according to PERMUTATION. */
-    private int wrap(int p) {
-        return permutation().wrap(p);
+    /** Return TABLE repeated twice, so that it may be indexed by any
+     *  value in 0 .. 2 * TABLE.length - 1 without wrapping. */
+    private static int[] doubled(int[] table) {
+        int[] result = new int[2 * table.length];
+        System.arraycopy(table, 0, result, 0, table.length);
+        System.arraycopy(table, 0, result, table.length, table.length);
+        return result;
     }
 
     /** My name. */
@@ -99,4 +141,18 @@ class Rotor {
     /** Returns an integer representing the setting. */
     private int _setting;
 
+    /** size() - _setting, the amount added to a wired contact to undo my
+     *  rotation without going negative. */
+    private int _offset;
+
+    /** My permutation's forward table, repeated twice, so that it can be
+     *  indexed by a contact plus my setting. */
+    private final int[] _forward;
+
+    /** My permutation's inverse table, repeated twice. */
+    private final int[] _backward;
+
+    /** Maps each value in 0 .. 2 * size() - 1 to itself modulo size(). */
+    private final int[] _wrap;
+
 }
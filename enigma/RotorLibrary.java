@@ -0,0 +1,30 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.List;
+
+/** The rotors available to a machine, looked up by name.  A library may
+ *  build its rotors only when they are first looked up, so that the cost
+ *  of a large library is paid only for the rotors actually used.  The
+ *  rotors it returns are patterns for the rotors of machines, and must not
+ *  be changed.  Any number of threads may share a library.
+ *  @author Chris Jereza
+ */
+interface RotorLibrary {
+
+    /** Return the rotor named NAME (the first of that name, if there are
+     *  several), or null if there is none. */
+    Rotor rotor(String name);
+
+    /** Return true iff I have a rotor named NAME. */
+    boolean contains(String name);
+
+    /** Return the number of rotors I have. */
+    int size();
+
+    /** Return the names of my rotors, in order. */
+    List<String> names();
+
+    /** Return all my rotors, in order, building any not yet built. */
+    Collection<Rotor> rotors();
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/** The suite of all JUnit tests for the rotor libraries.
+ *  @author Chris Jereza
+ */
+public class RotorLibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message to convert. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /** Return MESSAGE converted by a machine described by SPEC with
+     *  settings SETTINGS. */
+    private String convert(MachineSpec spec, String settings) {
+        Machine machine = spec.newMachine();
+        Main.setUp(machine, settings);
+        return machine.convert(MESSAGE);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCompiled() throws IOException {
+        MachineSpec spec = ServiceTest.navalSpec();
+        File file = File.createTempFile("enigma", ".lib");
+        try {
+            MappedRotorLibrary.write(spec, file);
+            assertTrue(MappedRotorLibrary.isLibrary(file));
+            MachineSpec mapped = MappedRotorLibrary.load(file);
+            MappedRotorLibrary library =
+                (MappedRotorLibrary) mapped.library();
+            assertEquals(9, library.size());
+            assertEquals(0, library.built());
+            assertEquals(5, mapped.numRotors());
+            assertEquals(3, mapped.numPawls());
+            String settings = "* B BETA III IV I AXLE (YF) (ZH)";
+            assertEquals(convert(spec, settings), convert(mapped, settings));
+            assertEquals(5, library.built());
+            assertFalse(mapped.hasRotor("VI"));
+            assertEquals(spec.rotor("IV").permutation().cyclesString(),
+                         mapped.rotor("IV").permutation().cyclesString());
+            assertEquals("J", ((MovingRotor) mapped.rotor("IV")).notches());
+            assertEquals(library.names().get(8), "C");
+            assertEquals(9, mapped.rotors().size());
+            assertEquals(9, library.built());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkManyRotors() throws IOException {
+        ArrayList<Rotor> rotors = new ArrayList<>(
+            ServiceTest.navalSpec().rotors());
+        for (int i = 0; i < 10000; i += 1) {
+            rotors.add(new MovingRotor("R" + i, rotors.get(i % 5)
+                                       .permutation(), "Q"));
+        }
+        MachineSpec spec = new MachineSpec(TestUtils.UPPER, 5, 3, rotors);
+        File file = File.createTempFile("enigma", ".lib");
+        try {
+            MappedRotorLibrary.write(spec, file);
+            MachineSpec mapped = MappedRotorLibrary.load(file);
+            String settings = "* C GAMMA R9999 R0 R4242 QEZA (AB)";
+            assertEquals(convert(spec, settings), convert(mapped, settings));
+            assertEquals(5,
+                         ((MappedRotorLibrary) mapped.library()).built());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkCorrupt() throws IOException {
+        File file = File.createTempFile("enigma", ".lib");
+        try {
+            MappedRotorLibrary.write(ServiceTest.navalSpec(), file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(raf.length() - 2);
+                raf.writeChar(0);
+            }
+            MachineSpec mapped = MappedRotorLibrary.load(file);
+            mapped.rotor("I");
+            try {
+                mapped.rotor("C");
+                fail("corrupt rotor accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("is corrupt"));
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(20);
+            }
+            try {
+                MappedRotorLibrary.load(file);
+                fail("truncated library accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("rotor library"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkText() {
+        String config = "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+            + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+            + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+            + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+            + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+            + " BETA N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+            + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+            + "      (RX) (SZ) (TV)\n";
+        MachineSpec spec = TextRotorLibrary.load(config.toCharArray());
+        TextRotorLibrary library = (TextRotorLibrary) spec.library();
+        assertEquals(6, library.size());
+        assertEquals(0, library.built());
+        String settings = "* B BETA III IV I AXLE (YF) (ZH)";
+        assertEquals(convert(ServiceTest.navalSpec(), settings),
+                     convert(spec, settings));
+        assertEquals(5, library.built());
+        assertEquals("(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)"
+                     + " (RX) (SZ) (TV)",
+                     spec.rotor("B").permutation().cyclesString()
+                     .replace(")(", ") ("));
+        try {
+            TextRotorLibrary.load((config + " V MZ (AB) (CA)\n")
+                                  .toCharArray());
+            fail("bad rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Cannot have duplicates.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkTextLikeMagic() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        try (FileWriter out = new FileWriter(file)) {
+            out.write("ENRLABCDFGHIJKMOPQSTUVWXYZ 3 2\n"
+                      + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)"
+                      + " (S)\n"
+                      + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT)"
+                      + " (A) (Q)\n"
+                      + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO)"
+                      + " (MP) (RX) (SZ) (TV)\n");
+        }
+        try {
+            assertFalse(MappedRotorLibrary.isLibrary(file));
+            MachineSpec spec = Main.loadConfig(file.getPath());
+            assertEquals("ENRLABCDFGHIJKMOPQSTUVWXYZ",
+                         spec.alphabet().string());
+            assertEquals(3, spec.rotors().size());
+        } finally {
+            file.delete();
+        }
+    }
+}
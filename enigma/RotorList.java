@@ -0,0 +1,60 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** A library of rotors that have already been built, indexed by name.
+ *  @author Chris Jereza
+ */
+class RotorList implements RotorLibrary {
+
+    /** A library of the rotors in ROTORS, which must not be changed
+     *  afterwards. */
+    RotorList(Collection<Rotor> rotors) {
+        _rotors = Collections.unmodifiableList(new ArrayList<>(rotors));
+        _byName = new HashMap<>(2 * _rotors.size());
+        ArrayList<String> names = new ArrayList<>(_rotors.size());
+        for (Rotor r : _rotors) {
+            _byName.putIfAbsent(r.name(), r);
+            names.add(r.name());
+        }
+        _names = Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public Rotor rotor(String name) {
+        return _byName.get(name);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return _byName.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return _rotors.size();
+    }
+
+    @Override
+    public List<String> names() {
+        return _names;
+    }
+
+    @Override
+    public Collection<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** The rotors, in order. */
+    private final List<Rotor> _rotors;
+
+    /** Their names, in order. */
+    private final List<String> _names;
+
+    /** The first of _rotors with each name, by name. */
+    private final HashMap<String, Rotor> _byName;
+}
@@ -0,0 +1,584 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Runs a KeySearch across several worker processes on the local host,
+ *  so that a search is not limited by the heap and collector of one JVM.
+ *  The rotor orders of the search are divided into shards of a few
+ *  orders each.  The coordinator listens on a local port, starts the
+ *  workers (see SearchWorker), and hands each worker a shard at a time.
+ *  Workers send back the best keys of each shard as they finish it, and
+ *  the coordinator keeps the best of all of them.  A shard whose worker
+ *  dies before finishing it is handed to another worker; since the best
+ *  keys are kept by settings line, keys sent twice are kept once.
+ *  Progress, with the rate at which keys are tried, is reported while
+ *  the search runs.
+ *
+ *  Any process on the host may connect to the coordinator's port, so a
+ *  worker must open with a random token that the coordinator makes for
+ *  each search and passes only to the workers it starts, in their
+ *  environment.  Connections without it are closed unanswered.
+ *  @author Chris Jereza
+ */
+public final class SearchCoordinator {
+
+    /** Search for the keys of the ciphertext in ARGS[1] (or on the
+     *  standard input, if there is no ARGS[1]) for the machine in the
+     *  configuration file ARGS[0] as KeySearch does, but on several
+     *  worker processes, printing the best keys found as settings lines
+     *  on the standard output, best first, and progress on the standard
+     *  error.  Exits normally if there are no errors; otherwise with code
+     *  1.
+     *
+     *  Options start with "--" and may appear anywhere in ARGS:
+     *    --workers=N  Start N worker processes (by default, one per
+     *                 available processor).
+     *    --threads=N  Search on N threads in each worker (by default, 1).
+     *    --shard=N    Hand out N rotor orders at a time (by default,
+     *                 enough for about four shards per worker).
+     *  and --top, --climbs, --pairs and --ngrams, as for KeySearch. */
+    public static void main(String... args) {
+        int code = run(args, System.in, System.out, System.err);
+        System.out.flush();
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Search as for main with arguments ARGS, reading the ciphertext
+     *  from IN if ARGS names no file, printing keys on OUT and progress
+     *  and errors on ERR.  Returns the exit code. */
+    static int run(String[] args, InputStream in, PrintStream out,
+                   PrintStream err) {
+        try {
+            ArrayList<String> files = new ArrayList<>();
+            int[] options = { DEFAULT_TOP, DEFAULT_CLIMBS, DEFAULT_PAIRS, 1,
+                              Runtime.getRuntime().availableProcessors(),
+                              0 };
+            String ngrams = null;
+            for (String arg : args) {
+                int k = arg.indexOf('=');
+                int option = OPTION_NAMES.indexOf(k < 0 ? arg
+                                                  : arg.substring(0, k + 1));
+                if (!arg.startsWith("--")) {
+                    files.add(arg);
+                } else if (arg.startsWith("--ngrams=")) {
+                    if (ngrams != null) {
+                        throw error("only one --ngrams option allowed");
+                    }
+                    ngrams = arg.substring("--ngrams=".length());
+                } else if (option < 0) {
+                    throw error("unknown option: %s", arg);
+                } else {
+                    options[option] = intOption(arg);
+                }
+            }
+            if (files.size() < 1 || files.size() > 2) {
+                throw error("Usage: java enigma.SearchCoordinator "
+                            + "[--workers=N] [--threads=N] [--shard=N] "
+                            + "[--top=K] [--climbs=N] [--pairs=N] "
+                            + "[--ngrams=F] CONFIG [INPUT]");
+            }
+            String text = files.size() > 1
+                ? KeySearch.readFile(files.get(1)) : KeySearch.readStream(in);
+            SearchCoordinator coordinator =
+                new SearchCoordinator(files.get(0), text, ngrams, options);
+            coordinator.setProgress(err);
+            coordinator.launch(options[WORKERS]);
+            for (KeyCandidate key : coordinator.await()) {
+                out.println(key.settings());
+            }
+            return 0;
+        } catch (EnigmaException excp) {
+            err.printf("Error: %s%n", excp.getMessage());
+        }
+        return 1;
+    }
+
+    /** Return the value of the option ARG, of the form --NAME=N. */
+    private static int intOption(String arg) {
+        try {
+            return Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+        } catch (NumberFormatException excp) {
+            throw error("bad option value: %s", arg);
+        }
+    }
+
+    /** A coordinator of a search for the keys of TEXT on the machine in
+     *  the configuration file named CONFIG, climbing with the n-gram
+     *  file named NGRAMS (or by index of coincidence, if null), with the
+     *  options OPTIONS: the number of keys reported, of start positions
+     *  climbed from per rotor order, of plugboard pairs, of threads per
+     *  worker, of workers expected, and of rotor orders per shard (0 for
+     *  a number suited to the workers).  Listens for workers on a free
+     *  port of the local host. */
+    SearchCoordinator(String config, String text, String ngrams,
+                      int[] options) {
+        _config = new File(config).getAbsolutePath();
+        _ngrams = ngrams == null ? null : new File(ngrams).getAbsolutePath();
+        MachineSpec spec = Main.loadConfig(config);
+        _ciphertext = KeySearch.ciphertext(text, spec.alphabet());
+        KeySearch search = new KeySearch(spec, _ciphertext,
+                                         new CoincidenceScorer(
+                                             spec.alphabet().size()));
+        search.setTop(options[TOP]);
+        search.setClimbs(options[CLIMBS]);
+        search.setPairs(options[PAIRS]);
+        search.setThreads(options[THREADS]);
+        if (options[WORKERS] < 0 || options[SHARD] < 0) {
+            throw error("bad number of workers or shard size");
+        }
+        _options = options.clone();
+        _best = new TopKeys(options[TOP]);
+        int orders = search.orders().size();
+        int shard = options[SHARD];
+        if (shard == 0) {
+            shard = Math.max(1, orders
+                             / (SHARDS_PER_WORKER
+                                * Math.max(1, options[WORKERS])));
+        }
+        for (int from = 0; from < orders; from += shard) {
+            _pending.add(new int[] { _shards, from,
+                                     Math.min(orders, from + shard) });
+            _shards += 1;
+        }
+        try {
+            _server = new ServerSocket(0, BACKLOG,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen: %s", excp.getMessage());
+        }
+        byte[] token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : token) {
+            hex.append(String.format("%02x", b));
+        }
+        _token = hex.toString();
+        Thread acceptor = new Thread(this::accept, "coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Return the port on which I listen for workers. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Return the token that workers must present. */
+    String token() {
+        return _token;
+    }
+
+    /** Report progress on OUT while awaiting the result. */
+    void setProgress(PrintStream out) {
+        _progress = out;
+    }
+
+    /** Start N worker processes, running the JVM and class path that I
+     *  run on, with my token in their environment. */
+    void launch(int n) {
+        String java = new File(new File(System.getProperty("java.home"),
+                                        "bin"), "java").getPath();
+        for (int i = 0; i < n; i += 1) {
+            ProcessBuilder builder =
+                new ProcessBuilder(java, "-cp",
+                                   System.getProperty("java.class.path"),
+                                   SearchWorker.class.getName(),
+                                   Integer.toString(port()));
+            builder.environment().put(SearchWorker.TOKEN_VARIABLE, _token);
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                Process process = builder.start();
+                synchronized (this) {
+                    _processes.add(process);
+                }
+            } catch (IOException excp) {
+                throw error("could not start worker: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the number of workers now connected. */
+    synchronized int workers() {
+        return _workers;
+    }
+
+    /** Return the worker processes I have started. */
+    synchronized List<Process> processes() {
+        return new ArrayList<>(_processes);
+    }
+
+    /** Wait until every shard has been searched, and return the best keys
+     *  found, best first.  Fails if a worker reports an error, or if no
+     *  worker is left to search the remaining shards. */
+    List<KeyCandidate> await() {
+        long start = System.nanoTime(), reported = start;
+        try {
+            synchronized (this) {
+                while (_done < _shards && _error == null) {
+                    if (_workers == 0 && !workersStarting()) {
+                        throw error("no workers left to search %d shards",
+                                    _shards - _done);
+                    }
+                    try {
+                        wait(PROGRESS_INTERVAL);
+                    } catch (InterruptedException excp) {
+                        throw error("interrupted");
+                    }
+                    long now = System.nanoTime();
+                    if (now - reported >= PROGRESS_INTERVAL * 1000000) {
+                        report("searched", start,
+                               String.format("%d workers", _workers));
+                        reported = now;
+                    }
+                }
+                if (_error != null) {
+                    throw error("worker failed: %s", _error);
+                }
+                report("done:", start,
+                       String.format("%d workers at most", _peakWorkers));
+                return _best.list();
+            }
+        } finally {
+            shutDown();
+        }
+    }
+
+    /** Return true iff some worker process I started is still running
+     *  but has never connected.  Assumes I am locked. */
+    private boolean workersStarting() {
+        for (Process process : _processes) {
+            if (process.isAlive() && !_connected.contains(process.pid())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Print a progress line beginning with WHAT and ending with WORKERS,
+     *  for a search started at time START, on _progress, if it is not
+     *  null.  Assumes I am locked. */
+    private void report(String what, long start, String workers) {
+        if (_progress == null) {
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        _progress.printf("%s %d/%d shards, %d keys in %.1fs (%.0f keys/sec),"
+                         + " %s%n", what, _done, _shards, _trials,
+                         seconds, _trials / Math.max(seconds, 1e-9),
+                         workers);
+        _progress.flush();
+    }
+
+    /** Stop listening, tell connected workers to quit, and stop the
+     *  worker processes I started. */
+    private void shutDown() {
+        synchronized (this) {
+            _finished = true;
+            notifyAll();
+        }
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore: we no longer need it. */
+        }
+        ArrayList<Process> processes;
+        synchronized (this) {
+            processes = new ArrayList<>(_processes);
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(QUIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException excp) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /** Accept workers until closed, serving each on a thread of its
+     *  own. */
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = _server.accept();
+                Thread thread = new Thread(() -> serve(socket), "worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Hand shards to the worker connected on SOCKET until all are done
+     *  or it dies, putting back any shard it does not finish. */
+    private void serve(Socket socket) {
+        int[] shard = null;
+        boolean counted = false;
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                s.getOutputStream(), StandardCharsets.UTF_8));
+            s.setSoTimeout(GREETING_TIMEOUT);
+            long pid = hello(in);
+            s.setSoTimeout(0);
+            synchronized (this) {
+                _workers += 1;
+                _peakWorkers = Math.max(_peakWorkers, _workers);
+                _connected.add(pid);
+                counted = true;
+            }
+            describe(out);
+            while ((shard = takeShard()) != null) {
+                out.write("SHARD " + shard[0] + " " + shard[1] + " "
+                          + shard[2] + "\n");
+                out.flush();
+                if (!collect(shard[0], in)) {
+                    break;
+                }
+                shard = null;
+            }
+            out.write("QUIT\n");
+            out.flush();
+        } catch (IOException excp) {
+            /* The worker has died: fall through to put back its shard. */
+        } finally {
+            synchronized (this) {
+                if (shard != null) {
+                    _pending.addFirst(shard);
+                }
+                if (counted) {
+                    _workers -= 1;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /** Read the greeting of a worker from IN, returning its process id.
+     *  Throws IOException if it is missing or malformed, or does not have
+     *  my token. */
+    private long hello(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        String[] words = line == null ? new String[0] : line.split(" ");
+        if (words.length != HELLO_WORDS || !words[0].equals("HELLO")
+            || !MessageDigest.isEqual(
+                   words[1].getBytes(StandardCharsets.UTF_8),
+                   _token.getBytes(StandardCharsets.UTF_8))) {
+            throw new IOException("bad greeting");
+        }
+        try {
+            return Long.parseLong(words[2]);
+        } catch (NumberFormatException excp) {
+            throw new IOException("bad greeting");
+        }
+    }
+
+    /** Send the description of my search to a worker on OUT. */
+    private void describe(Writer out) throws IOException {
+        StringBuilder text = new StringBuilder("TEXT");
+        for (int c : _ciphertext) {
+            text.append(' ').append(c);
+        }
+        out.write("CONFIG " + _config + "\n");
+        out.write(text.append('\n').toString());
+        out.write("OPTIONS " + _options[TOP] + " " + _options[CLIMBS] + " "
+                  + _options[PAIRS] + " " + _options[THREADS] + "\n");
+        if (_ngrams != null) {
+            out.write("NGRAMS " + _ngrams + "\n");
+        }
+    }
+
+    /** Return the next shard to hand out, waiting while there is none
+     *  but some are still being searched, or null if all are done. */
+    private synchronized int[] takeShard() {
+        while (_pending.isEmpty() && !_finished && _done < _shards) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                return null;
+            }
+        }
+        return _finished ? null : _pending.poll();
+    }
+
+    /** Read the results of shard ID from IN, keeping its keys once the
+     *  whole shard is done, so that a shard that must be searched again
+     *  contributes nothing twice.  Returns true when the shard is done,
+     *  and false if the worker reported an error.  Throws IOException if
+     *  the worker dies first or sends a reply that is not about shard
+     *  ID. */
+    private boolean collect(int id, BufferedReader in) throws IOException {
+        ArrayList<KeyCandidate> keys = new ArrayList<>();
+        String line;
+        String shard = Integer.toString(id);
+        while ((line = in.readLine()) != null) {
+            String[] words = line.split(" ", KEY_WORDS);
+            if (line.startsWith("KEY ")) {
+                try {
+                    keys.add(new KeyCandidate(
+                                 words[3], Double.parseDouble(words[2])));
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw new IOException("bad reply: " + line);
+                }
+                if (!words[1].equals(shard)) {
+                    throw new IOException("bad reply: " + line);
+                }
+            } else if (line.startsWith("DONE ")) {
+                long trials;
+                try {
+                    trials = Long.parseLong(words[2]);
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw new IOException("bad reply: " + line);
+                }
+                if (words.length != DONE_WORDS || !words[1].equals(shard)) {
+                    throw new IOException("bad reply: " + line);
+                }
+                _best.addAll(keys);
+                synchronized (this) {
+                    _done += 1;
+                    _trials += trials;
+                    notifyAll();
+                }
+                return true;
+            } else if (line.startsWith("ERROR ")) {
+                synchronized (this) {
+                    _error = line.substring("ERROR ".length());
+                    notifyAll();
+                }
+                return false;
+            }
+        }
+        throw new IOException("worker closed connection");
+    }
+
+    /** Indices of the values of the options. */
+    static final int TOP = 0, CLIMBS = 1, PAIRS = 2, THREADS = 3,
+        WORKERS = 4, SHARD = 5;
+
+    /** Names of the integer options, in the order of their indices. */
+    private static final List<String> OPTION_NAMES =
+        List.of("--top=", "--climbs=", "--pairs=", "--threads=",
+                "--workers=", "--shard=");
+
+    /** Default number of keys reported. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Default number of start positions climbed from per rotor order. */
+    private static final int DEFAULT_CLIMBS = 4;
+
+    /** Default greatest number of plugboard pairs. */
+    private static final int DEFAULT_PAIRS = 10;
+
+    /** Number of shards per worker, when the shard size is not given. */
+    private static final int SHARDS_PER_WORKER = 4;
+
+    /** Milliseconds between progress reports. */
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    /** Milliseconds allowed for a worker to quit before it is killed. */
+    private static final long QUIT_TIMEOUT = 2000;
+
+    /** Maximum queue length for incoming connections. */
+    private static final int BACKLOG = 50;
+
+    /** Number of words in a HELLO greeting. */
+    private static final int HELLO_WORDS = 3;
+
+    /** Number of random bytes in a token. */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Milliseconds allowed for a worker to greet me once connected. */
+    private static final int GREETING_TIMEOUT = 10000;
+
+    /** Number of words in a KEY reply, counting the settings line as
+     *  one. */
+    private static final int KEY_WORDS = 4;
+
+    /** Number of words in a DONE reply. */
+    private static final int DONE_WORDS = 3;
+
+    /** The token that workers must present, in hexadecimal. */
+    private final String _token;
+
+    /** Absolute name of the configuration file. */
+    private final String _config;
+
+    /** Absolute name of the n-gram file, or null. */
+    private final String _ngrams;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** Values of the options. */
+    private final int[] _options;
+
+    /** The best keys found so far. */
+    private final TopKeys _best;
+
+    /** Shards not yet handed out, or put back: id, first rotor order and
+     *  one past the last. */
+    private final ArrayDeque<int[]> _pending = new ArrayDeque<>();
+
+    /** Number of shards. */
+    private int _shards;
+
+    /** Number of shards done. */
+    private int _done;
+
+    /** Number of decryptions tried in the shards done. */
+    private long _trials;
+
+    /** Number of workers connected now. */
+    private int _workers;
+
+    /** Greatest number of workers connected at once. */
+    private int _peakWorkers;
+
+    /** Process ids of the workers that have ever connected. */
+    private final HashSet<Long> _connected = new HashSet<>();
+
+    /** The first error reported by a worker, or null. */
+    private String _error;
+
+    /** True once the search is over. */
+    private boolean _finished;
+
+    /** The worker processes I started. */
+    private final ArrayList<Process> _processes = new ArrayList<>();
+
+    /** Where progress is reported, or null. */
+    private PrintStream _progress;
+
+    /** Socket on which I listen for workers. */
+    private final ServerSocket _server;
+}
@@ -0,0 +1,204 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the search coordinator.
+ *  @author Chris Jereza
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration describing the same machine as
+     *  KeySearchTest.smallSpec(). */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 2\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "      (RX) (SZ) (TV)\n"
+        + " C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "      (QZ) (SX) (UY)\n";
+
+    /** The ciphertext searched. */
+    private static final String CIPHERTEXT =
+        KeySearchTest.convert(KeySearchTest.smallSpec(),
+                              "* C II I QZ (HE) (RW)",
+                              KeySearchTest.PLAINTEXT);
+
+    /** Return options for a coordinator expecting WORKERS workers, with
+     *  one rotor order per shard. */
+    private static int[] options(int workers) {
+        return new int[] { 5, 2, 10, 1, workers, 1 };
+    }
+
+    /** Return the keys found by searching CIPHERTEXT in one process. */
+    private static List<KeyCandidate> expected() {
+        KeySearch search =
+            new KeySearch(KeySearchTest.smallSpec(),
+                          KeySearch.ciphertext(CIPHERTEXT, UPPER),
+                          new CoincidenceScorer(UPPER.size()));
+        search.setTop(5);
+        search.setClimbs(2);
+        search.setThreads(1);
+        return search.search();
+    }
+
+    /** Return a configuration file holding CONFIG. */
+    private static File configFile() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        Files.write(file.toPath(), CONFIG.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkWorkerProcesses() throws IOException {
+        File config = configFile();
+        try {
+            SearchCoordinator coordinator =
+                new SearchCoordinator(config.getPath(), CIPHERTEXT, null,
+                                      options(2));
+            coordinator.launch(2);
+            List<KeyCandidate> keys = coordinator.await();
+            assertEquals(expected().toString(), keys.toString());
+            assertEquals("* C II I QZ (EH) (RW)", keys.get(0).settings());
+        } finally {
+            config.delete();
+        }
+    }
+
+    @Test
+    public void checkDeadWorker() throws IOException, InterruptedException {
+        File config = configFile();
+        try {
+            SearchCoordinator coordinator =
+                new SearchCoordinator(config.getPath(), CIPHERTEXT, null,
+                                      options(0));
+            try (Socket dying = new Socket(InetAddress.getLoopbackAddress(),
+                                           coordinator.port())) {
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(dying.getInputStream(),
+                                          StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(dying.getOutputStream(),
+                                                    StandardCharsets.UTF_8);
+                out.write("HELLO " + coordinator.token() + " 0\n");
+                out.flush();
+                String line;
+                do {
+                    line = in.readLine();
+                } while (!line.startsWith("SHARD "));
+                assertEquals("SHARD 0 0 1", line);
+                out.write("KEY 0 1.0 * B I II AA\n");
+                out.flush();
+                Thread worker = new Thread(() ->
+                    SearchWorker.serve(coordinator.port(),
+                                       coordinator.token()));
+                worker.setDaemon(true);
+                worker.start();
+                while (coordinator.workers() < 2) {
+                    Thread.sleep(10);
+                }
+            }
+            ByteArrayOutputStream progress = new ByteArrayOutputStream();
+            coordinator.setProgress(new PrintStream(progress, true));
+            List<KeyCandidate> keys = coordinator.await();
+            assertEquals(expected().toString(), keys.toString());
+            assertTrue(progress.toString().trim()
+                       .endsWith("2 workers at most"));
+        } finally {
+            config.delete();
+        }
+    }
+
+    @Test
+    public void checkKilledWorker() throws Exception {
+        File config = configFile();
+        try {
+            SearchCoordinator coordinator =
+                new SearchCoordinator(config.getPath(), CIPHERTEXT, null,
+                                      options(2));
+            coordinator.launch(1);
+            while (coordinator.workers() < 1) {
+                Thread.sleep(10);
+            }
+            coordinator.launch(1);
+            Process first = coordinator.processes().get(0);
+            first.destroyForcibly();
+            first.waitFor();
+            List<KeyCandidate> keys = coordinator.await();
+            assertEquals(expected().toString(), keys.toString());
+        } finally {
+            config.delete();
+        }
+    }
+
+    @Test
+    public void checkBadToken() throws IOException {
+        File config = configFile();
+        try {
+            SearchCoordinator coordinator =
+                new SearchCoordinator(config.getPath(), CIPHERTEXT, null,
+                                      options(0));
+            try (Socket intruder =
+                 new Socket(InetAddress.getLoopbackAddress(),
+                            coordinator.port())) {
+                Writer out = new OutputStreamWriter(
+                    intruder.getOutputStream(), StandardCharsets.UTF_8);
+                out.write("HELLO 0123456789abcdef0123456789abcdef 0\n");
+                out.flush();
+                assertEquals(-1, intruder.getInputStream().read());
+            }
+            assertEquals(0, coordinator.workers());
+            coordinator.await();
+            fail("search with no real workers succeeded");
+        } catch (EnigmaException excp) {
+            assertEquals("no workers left to search 12 shards",
+                         excp.getMessage());
+        } finally {
+            config.delete();
+        }
+    }
+
+    @Test
+    public void checkNoWorkers() throws IOException {
+        File config = configFile();
+        try {
+            SearchCoordinator coordinator =
+                new SearchCoordinator(config.getPath(), CIPHERTEXT, null,
+                                      options(0));
+            coordinator.await();
+            fail("search without workers succeeded");
+        } catch (EnigmaException excp) {
+            assertEquals("no workers left to search 12 shards",
+                         excp.getMessage());
+        } finally {
+            config.delete();
+        }
+    }
+}
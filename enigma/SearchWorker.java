@@ -0,0 +1,204 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process for a SearchCoordinator, which searches the shards of
+ *  the key space the coordinator hands it and sends back what it finds.
+ *
+ *  The worker connects to the coordinator on the local host, greets it
+ *  with
+ *    HELLO token pid   token being the coordinator's token, from the
+ *                      environment variable ENIGMA_WORKER_TOKEN, and
+ *                      pid the worker's process id,
+ *  and reads lines describing the search:
+ *    CONFIG name       the configuration file, read by the worker,
+ *    TEXT c0 c1 ...    the ciphertext, as alphabet indices,
+ *    OPTIONS top climbs pairs threads
+ *                      settings for its KeySearch,
+ *    NGRAMS name       (optional) an n-gram file for climbing,
+ *  and then any number of
+ *    SHARD id from to  search rotor orders from through to - 1,
+ *  ending with QUIT.  For each shard, it sends a line
+ *    KEY id score settings
+ *  for each of the best keys of the shard, and then
+ *    DONE id trials
+ *  with the number of decryptions tried.  On an error, it sends
+ *    ERROR message
+ *  and stops.  Lines end in '\n' and are in UTF-8.
+ *  @author Chris Jereza
+ */
+public final class SearchWorker {
+
+    /** Serve the coordinator listening on port ARGS[0] of the local host,
+     *  whose token is the value of TOKEN_VARIABLE, until it is done.
+     *  Exits normally unless there is an error, which is reported to the
+     *  coordinator if possible, and otherwise on the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: java enigma.SearchWorker PORT");
+            }
+            int port;
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException excp) {
+                throw error("bad port: %s", args[0]);
+            }
+            String token = System.getenv(TOKEN_VARIABLE);
+            if (token == null) {
+                throw error("no coordinator token in %s", TOKEN_VARIABLE);
+            }
+            serve(port, token);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Serve the coordinator listening on PORT of the local host, whose
+     *  token is TOKEN, until it sends QUIT or closes the connection. */
+    static void serve(int port, String token) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.write("HELLO " + token + " " + ProcessHandle.current().pid()
+                      + "\n");
+            out.flush();
+            try {
+                new SearchWorker().serve(in, out);
+            } catch (EnigmaException excp) {
+                out.write("ERROR " + excp.getMessage() + "\n");
+                out.flush();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw error("lost connection to coordinator: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Read requests from IN and write replies to OUT until told to
+     *  quit. */
+    private void serve(BufferedReader in, Writer out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.split(" ");
+            switch (words[0]) {
+            case "CONFIG":
+                _config = line.substring("CONFIG ".length());
+                break;
+            case "TEXT":
+                _ciphertext = new int[words.length - 1];
+                for (int i = 1; i < words.length; i += 1) {
+                    _ciphertext[i - 1] = number(words[i]);
+                }
+                break;
+            case "OPTIONS":
+                _options = new int[words.length - 1];
+                for (int i = 1; i < words.length; i += 1) {
+                    _options[i - 1] = number(words[i]);
+                }
+                break;
+            case "NGRAMS":
+                _ngrams = line.substring("NGRAMS ".length());
+                break;
+            case "SHARD":
+                if (words.length != SHARD_WORDS) {
+                    throw error("bad request: %s", line);
+                }
+                search(number(words[1]), number(words[2]),
+                       number(words[3]), out);
+                break;
+            case "QUIT":
+                return;
+            default:
+                throw error("unknown request: %s", line);
+            }
+        }
+    }
+
+    /** Search the rotor orders FROM through TO - 1 as shard ID, sending
+     *  the results to OUT. */
+    private void search(int id, int from, int to, Writer out)
+        throws IOException {
+        if (_search == null) {
+            if (_config == null || _ciphertext == null || _options == null
+                || _options.length != OPTIONS) {
+                throw error("shard requested before search described");
+            }
+            MachineSpec spec = Main.loadConfig(_config);
+            for (int c : _ciphertext) {
+                if (c < 0 || c >= spec.alphabet().size()) {
+                    throw error("bad ciphertext index: %d", c);
+                }
+            }
+            _search = new KeySearch(spec, _ciphertext,
+                                    new CoincidenceScorer(
+                                        spec.alphabet().size()));
+            _search.setTop(_options[0]);
+            _search.setClimbs(_options[1]);
+            _search.setPairs(_options[2]);
+            _search.setThreads(_options[3]);
+            if (_ngrams != null) {
+                _search.setClimbFitness(
+                    NgramScorer.load(new File(_ngrams), spec.alphabet()));
+            }
+        }
+        long before = _search.trials();
+        for (KeyCandidate key : _search.search(from, to)) {
+            out.write("KEY " + id + " " + key.score() + " " + key.settings()
+                      + "\n");
+        }
+        out.write("DONE " + id + " " + (_search.trials() - before) + "\n");
+        out.flush();
+    }
+
+    /** Return the value of WORD, which must be an integer. */
+    private static int number(String word) {
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException excp) {
+            throw error("bad number in request: %s", word);
+        }
+    }
+
+    /** Environment variable holding the coordinator's token. */
+    static final String TOKEN_VARIABLE = "ENIGMA_WORKER_TOKEN";
+
+    /** Number of words in a SHARD request. */
+    private static final int SHARD_WORDS = 4;
+
+    /** Number of values in an OPTIONS request. */
+    static final int OPTIONS = 4;
+
+    /** Name of the configuration file. */
+    private String _config;
+
+    /** The ciphertext, as alphabet indices. */
+    private int[] _ciphertext;
+
+    /** Values of the OPTIONS request. */
+    private int[] _options;
+
+    /** Name of the n-gram file, or null. */
+    private String _ngrams;
+
+    /** The search, once described. */
+    private KeySearch _search;
+}
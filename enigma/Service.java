@@ -0,0 +1,259 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma service, which converts messages sent to it over
+ *  a socket on the local host, so that its clients need not each start a
+ *  JVM and read a configuration file.
+ *
+ *  A client sends any number of requests on one connection, each two
+ *  lines long: a settings line, as in Main's input, then a message line.
+ *  For each, the service sends back one line: the converted message in
+ *  groups of five, as Main would print it, or "Error: " followed by the
+ *  reason the request failed.  A line reading just STATS instead gets a
+ *  line of throughput, latency and settings-cache figures.  Lines end
+ *  in '\n' and are in UTF-8.
+ *
+ *  Each connection is served on a thread of its own: a virtual thread
+ *  where the JVM provides them, and otherwise a pooled platform thread.
+ *  Each request is converted on a machine taken from a shared pool of
+ *  machines built from one MachineSpec, so no two requests in progress
+ *  share a rotor.
+ *  @author Chris Jereza
+ */
+public final class Service {
+
+    /** Serve conversions for the machine described by the configuration
+     *  file named ARGS[0] on port ARGS[1] of the local host, or on any
+     *  free port if ARGS[1] is absent or 0.  Reports the port on the
+     *  standard output once listening, and the request statistics on the
+     *  standard error when shut down. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: java enigma.Service CONFIG [PORT]");
+            }
+            int port = 0;
+            if (args.length > 1) {
+                try {
+                    port = Integer.parseInt(args[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad port: %s", args[1]);
+                }
+            }
+            Service service = new Service(Main.loadConfig(args[0]), port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                System.err.printf("%s%n", service.stats())));
+            System.out.printf("listening on port %d%n", service.port());
+            System.out.flush();
+            service.serve();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A service converting with machines described by SPEC, listening on
+     *  PORT of the local host (any free port if 0). */
+    Service(MachineSpec spec, int port) {
+        _spec = spec;
+        _keys = new SettingsCache(spec, SETTINGS_CACHE_SIZE);
+        try {
+            _server = new ServerSocket(port, BACKLOG,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        }
+        for (int i = 0; i < INITIAL_MACHINES; i += 1) {
+            _machines.add(spec.newMachine());
+        }
+        _pooled.set(INITIAL_MACHINES);
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Return the statistics of the requests I have served. */
+    LatencyStats stats() {
+        return _stats;
+    }
+
+    /** Accept connections and serve each on a thread of its own, until
+     *  closed. */
+    void serve() {
+        try {
+            while (true) {
+                Socket client = _server.accept();
+                _connections.execute(() -> serve(client));
+            }
+        } catch (IOException excp) {
+            if (!_server.isClosed()) {
+                throw error("could not accept connection: %s",
+                            excp.getMessage());
+            }
+        } finally {
+            _connections.shutdown();
+        }
+    }
+
+    /** Stop accepting connections. */
+    void close() {
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            throw error("could not close service: %s", excp.getMessage());
+        }
+    }
+
+    /** Serve the requests sent on CLIENT until it closes. */
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+            StringBuilder response = new StringBuilder();
+            String settings;
+            while ((settings = in.readLine()) != null) {
+                response.setLength(0);
+                if (settings.equals(STATS_REQUEST)) {
+                    response.append(_stats).append(' ').append(_keys)
+                        .append('\n');
+                } else {
+                    String message = in.readLine();
+                    if (message == null) {
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    convert(settings, message, response);
+                    _stats.record(System.nanoTime() - start);
+                }
+                out.append(response);
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Append to RESPONSE the response line to a request to convert
+     *  MESSAGE with the machine set up by SETTINGS. */
+    void convert(String settings, String message, StringBuilder response) {
+        Machine machine = takeMachine();
+        try {
+            if (settings.indexOf('*') == -1) {
+                throw new EnigmaException("Input must begin with Setting.");
+            }
+            _keys.setUp(machine, settings);
+            char[] chars = message.toCharArray();
+            int n = machine.convert(chars, 0, chars.length, chars, 0);
+            MessageConverter.appendGroups(chars, 0, n, response);
+            response.setLength(response.length() - LINE_END.length());
+            response.append('\n');
+        } catch (EnigmaException excp) {
+            response.append("Error: ").append(excp.getMessage()).append('\n');
+        } finally {
+            giveMachine(machine);
+        }
+    }
+
+    /** Return a machine for the sole use of the caller until it gives it
+     *  back. */
+    private Machine takeMachine() {
+        Machine machine = _machines.poll();
+        if (machine == null) {
+            return _spec.newMachine();
+        }
+        _pooled.decrementAndGet();
+        return machine;
+    }
+
+    /** Return MACHINE, taken from takeMachine, to the pool, unless the
+     *  pool is full. */
+    private void giveMachine(Machine machine) {
+        if (_pooled.incrementAndGet() <= MAX_MACHINES) {
+            _machines.add(machine);
+        } else {
+            _pooled.decrementAndGet();
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread, if
+     *  this JVM has them, or else on a pooled daemon thread. */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool((task) -> {
+                Thread thread = new Thread(task, "enigma-service");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** The request that asks for statistics. */
+    static final String STATS_REQUEST = "STATS";
+
+    /** Number of machines built in advance. */
+    private static final int INITIAL_MACHINES =
+        Runtime.getRuntime().availableProcessors();
+
+    /** Most idle machines kept for later requests. */
+    private static final int MAX_MACHINES = 4 * INITIAL_MACHINES + 16;
+
+    /** Most connections waiting to be accepted. */
+    private static final int BACKLOG = 1024;
+
+    /** Line terminator appended by MessageConverter.appendGroups. */
+    private static final String LINE_END = System.lineSeparator();
+
+    /** Description of the machines I use. */
+    private final MachineSpec _spec;
+
+    /** The socket on which I accept connections. */
+    private final ServerSocket _server;
+
+    /** Idle machines. */
+    private final ConcurrentLinkedQueue<Machine> _machines =
+        new ConcurrentLinkedQueue<>();
+
+    /** Number of machines in _machines, or about to be. */
+    private final AtomicInteger _pooled = new AtomicInteger();
+
+    /** Runs the service of each connection. */
+    private final ExecutorService _connections = newConnectionExecutor();
+
+    /** Compiled settings lines, shared by all connections. */
+    private final SettingsCache _keys;
+
+    /** Most settings lines kept compiled. */
+    private static final int SETTINGS_CACHE_SIZE = 4096;
+
+    /** Latencies of the conversions I have done. */
+    private final LatencyStats _stats = new LatencyStats();
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Service class.
+ *  @author Chris Jereza
+ */
+public class ServiceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the naval machine with rotors I-V, Beta, Gamma and
+     *  reflectors B and C, in 5 slots with 3 pawls. */
+    static MachineSpec navalSpec() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = { "I", "II", "III", "IV", "V" };
+        String notches = "QEVJZ";
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i].toUpperCase(),
+                                       new Permutation(NAVALA.get(moving[i]),
+                                                       UPPER),
+                                       notches.substring(i, i + 1)));
+        }
+        rotors.add(new FixedRotor("BETA",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new FixedRotor("GAMMA",
+                                  new Permutation(NAVALA.get("Gamma"),
+                                                  UPPER)));
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"),
+                                                      UPPER)));
+        return new MachineSpec(UPPER, 5, 3, rotors);
+    }
+
+    /** Return the response expected to a request to convert MESSAGE with
+     *  SETTINGS on a machine described by SPEC. */
+    private String expected(MachineSpec spec, String settings,
+                            String message) {
+        Machine machine = spec.newMachine();
+        Main.setUp(machine, settings);
+        StringBuilder result = new StringBuilder();
+        String converted = machine.convert(message.replace(" ", ""));
+        for (int i = 0; i < converted.length(); i += 1) {
+            result.append(converted.charAt(i));
+            if ((i + 1) % 5 == 0 || i == converted.length() - 1) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Settings lines for requests. */
+    private static final String[] SETTINGS = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C GAMMA II V I ZZZZ",
+        "* B BETA I II III AAAA (AQ) (EP)",
+    };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConcurrentClients() throws Exception {
+        MachineSpec spec = navalSpec();
+        Service service = new Service(spec, 0);
+        Thread server = new Thread(service::serve);
+        server.setDaemon(true);
+        server.start();
+        int clients = 8, requests = 50;
+        String message = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA";
+        Thread[] threads = new Thread[clients];
+        String[] failures = new String[clients];
+        for (int c = 0; c < clients; c += 1) {
+            final int id = c;
+            threads[c] = new Thread(() -> {
+                try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(),
+                                service.port())) {
+                    Writer out = new OutputStreamWriter(
+                        socket.getOutputStream(), StandardCharsets.UTF_8);
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(),
+                                              StandardCharsets.UTF_8));
+                    for (int r = 0; r < requests; r += 1) {
+                        String settings =
+                            SETTINGS[(id + r) % SETTINGS.length];
+                        out.write(settings + "\n" + message + "\n");
+                        out.flush();
+                        String response = in.readLine();
+                        if (!expected(spec, settings, message)
+                            .equals(response)) {
+                            failures[id] = response;
+                        }
+                    }
+                } catch (IOException excp) {
+                    failures[id] = excp.toString();
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        service.close();
+        for (String failure : failures) {
+            assertNull(failure);
+        }
+        assertEquals(clients * requests, service.stats().count());
+    }
+
+    @Test
+    public void checkErrors() {
+        Service service = new Service(navalSpec(), 0);
+        StringBuilder response = new StringBuilder();
+        service.convert("* B BETA III IV I AXLE", "HELLO.", response);
+        assertTrue(response.toString().startsWith("Error: "));
+        response.setLength(0);
+        service.convert("B BETA III IV I AXLE", "HELLO", response);
+        assertEquals("Error: Input must begin with Setting.\n",
+                     response.toString());
+        response.setLength(0);
+        service.convert("* B BETA III IV I AXLE", "HELLO", response);
+        assertEquals(expected(navalSpec(), "* B BETA III IV I AXLE",
+                              "HELLO") + "\n", response.toString());
+        service.close();
+    }
+}
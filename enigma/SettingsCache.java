@@ -0,0 +1,167 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of compiled settings lines, for
+ *  input that uses the same few keys over and over.  The first time a
+ *  settings line is seen, it is checked and applied as by Main.setUp, and
+ *  the resulting rotor order, start positions and plugboard are kept;
+ *  after that, setting a machine up from the same line (up to the amount
+ *  of whitespace) just copies them into the machine.  Lines differing
+ *  only in their rotors and positions share one plugboard Permutation.
+ *  Lines with errors are not kept.  Any number of threads may share one.
+ *  @author Chris Jereza
+ */
+class SettingsCache {
+
+    /** A cache of at most CAPACITY settings lines for machines described
+     *  by SPEC. */
+    SettingsCache(MachineSpec spec, int capacity) {
+        if (capacity < 1) {
+            throw new EnigmaException("Cache capacity must be positive.");
+        }
+        _spec = spec;
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MachineSettings> eldest) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+        _plugboards = new LinkedHashMap<>(16, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Permutation> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Set M, which must be described by my spec, according to SETTINGS,
+     *  as Main.setUp would. */
+    void setUp(Machine M, String settings) {
+        M.restoreSettings(get(settings));
+    }
+
+    /** Return the compiled form of SETTINGS. */
+    MachineSettings get(String settings) {
+        String key = normalize(settings);
+        MachineSettings result;
+        synchronized (this) {
+            result = _entries.get(key);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+            _misses += 1;
+        }
+        Machine scratch = _spec.newMachine();
+        Main.setUp(scratch, key);
+        result = scratch.saveSettings();
+        String plugboard = plugboardCycles(key, result.numRotors());
+        synchronized (this) {
+            Permutation shared = _plugboards.get(plugboard);
+            if (shared == null) {
+                _plugboards.put(plugboard, result.plugboard());
+            } else {
+                result = result.withPlugboard(shared);
+            }
+            _entries.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return SETTINGS with each run of whitespace replaced by one space
+     *  and trailing whitespace removed.  Such a line sets a machine up
+     *  just as SETTINGS does. */
+    static String normalize(String settings) {
+        int len = settings.length();
+        StringBuilder result = new StringBuilder(len);
+        boolean space = false;
+        for (int i = 0; i < len; i += 1) {
+            char c = settings.charAt(i);
+            if (Machine.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space) {
+                    result.append(' ');
+                    space = false;
+                }
+                result.append(c);
+            }
+        }
+        if (result.length() == 0 && space) {
+            result.append(' ');
+        }
+        return result.toString();
+    }
+
+    /** Return the plugboard cycles of the normalized settings line
+     *  SETTINGS, which names NUMROTORS rotors, run together. */
+    private static String plugboardCycles(String settings, int numRotors) {
+        int start = 0;
+        for (int words = 0; words < numRotors + 2 && start >= 0;
+             words += 1) {
+            start = settings.indexOf(' ', start + (words == 0 ? 0 : 1));
+        }
+        if (start < 0) {
+            return "";
+        }
+        return settings.substring(start + 1).replace(" ", "");
+    }
+
+    /** Return the number of lines found in the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lines that had to be compiled. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of lines discarded to make room. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return the fraction of lines found in the cache, or 0 if there
+     *  have been none. */
+    synchronized double hitRate() {
+        long total = _hits + _misses;
+        return total == 0 ? 0.0 : (double) _hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("settings: hits=%d misses=%d hit-rate=%.1f%%"
+                             + " evictions=%d", _hits, _misses,
+                             100 * hitRate(), _evictions);
+    }
+
+    /** Load factor of the cache tables. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Description of the machines I set up. */
+    private final MachineSpec _spec;
+
+    /** Most lines kept. */
+    private final int _capacity;
+
+    /** Compiled settings by normalized settings line, least recently used
+     *  first. */
+    private final LinkedHashMap<String, MachineSettings> _entries;
+
+    /** Plugboards of the lines in _entries, by their cycles run
+     *  together. */
+    private final LinkedHashMap<String, Permutation> _plugboards;
+
+    /** Counters reported by hits, misses, and evictions. */
+    private long _hits, _misses, _evictions;
+}
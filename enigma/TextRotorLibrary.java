@@ -0,0 +1,299 @@
+package enigma;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A library of rotors described by the text of a configuration file.
+ *  The text is read in one pass, which checks every rotor description
+ *  and records its name, type, notches and where its cycles lie in the
+ *  text, but builds no permutations.  A rotor's permutation and tables
+ *  are built only when it is first looked up, so the cost of a large
+ *  library is mostly paid for the rotors actually used, while errors in
+ *  any rotor are still reported before any input is processed.
+ *  @author Chris Jereza
+ */
+class TextRotorLibrary implements RotorLibrary {
+
+    /** A library of the rotors described in TEXT, which becomes mine and
+     *  must not be changed. */
+    private TextRotorLibrary(char[] text) {
+        _text = text;
+    }
+
+    /** Return the description of the machine given by TEXT, the contents
+     *  of a configuration file, which becomes the library's and must not
+     *  be changed. */
+    static MachineSpec load(char[] text) {
+        return new TextRotorLibrary(text).parse();
+    }
+
+    /** Read my text, returning the machine it describes. */
+    private MachineSpec parse() {
+        requireNext();
+        advance();
+        _alphabet = new Alphabet(word(_start, _end));
+        _seen = new int[_alphabet.size()];
+        int numRotors = nextInt();
+        int numPawls = nextInt();
+        requireNext();
+        advance();
+        while (hasNext()) {
+            String name = word(_start, _end).toUpperCase();
+            requireNext();
+            advance();
+            char type = _text[_start];
+            String notches = word(_start + 1, _end);
+            int from = -1;
+            if (hasNext()) {
+                advance();
+            }
+            while (tokenContains('(') && hasNext()) {
+                if (!tokenContains(')')) {
+                    throw new EnigmaException("Improper parentheses");
+                }
+                from = from == -1 ? _start : from;
+                advance();
+            }
+            int to = from == -1 ? -1 : _tokenBefore;
+            if (!hasNext()) {
+                from = from == -1 ? _start : from;
+                to = _end;
+            }
+            add(name, type, notches, from, to);
+        }
+        return new MachineSpec(_alphabet, numRotors, numPawls, this);
+    }
+
+    /** Check and record a rotor named NAME of type TYPE with notches
+     *  NOTCHES, whose cycles are the words in _text[FROM .. TO - 1] run
+     *  together (none if FROM is -1). */
+    private void add(String name, char type, String notches, int from,
+                     int to) {
+        checkCycles(from, to, _entries.size() + 1);
+        if (type == 'M') {
+            for (int i = 0; i < notches.length(); i += 1) {
+                if (!_alphabet.contains(notches.charAt(i))) {
+                    throw new EnigmaException(
+                        "Incorrect format for NOTCHES.");
+                }
+            }
+        }
+        _index.putIfAbsent(name, _entries.size());
+        _entries.add(new Entry(name, type, notches, from, to));
+    }
+
+    /** Check the cycles in _text[FROM .. TO - 1] as the Permutation
+     *  constructor would, reporting the same errors, using STAMP to mark
+     *  the characters already mapped. */
+    private void checkCycles(int from, int to, int stamp) {
+        int len = 0;
+        for (int i = Math.max(from, 0); i < to; i += 1) {
+            char c = _text[i];
+            if (c == '(') {
+                len = 0;
+            } else if (c == ')') {
+                checkCycle(len, stamp);
+            } else if (!Character.isWhitespace(c)) {
+                if (len == _cycle.length) {
+                    _cycle = Arrays.copyOf(_cycle, 2 * len);
+                }
+                _cycle[len] = c;
+                len += 1;
+            }
+        }
+    }
+
+    /** Check the cycle in _cycle[0 .. LEN - 1] as Permutation would,
+     *  marking its characters with STAMP. */
+    private void checkCycle(int len, int stamp) {
+        for (int k = 0; k < len; k += 1) {
+            int c = _alphabet.toInt(_cycle[k]);
+            _alphabet.toInt(_cycle[(k + 1) % len]);
+            if (_seen[c] == stamp) {
+                throw new EnigmaException("Cannot have duplicates.");
+            }
+            _seen[c] = stamp;
+        }
+    }
+
+    /** Return true iff there is another word in _text after _pos, moving
+     *  _pos to its start. */
+    private boolean hasNext() {
+        while (_pos < _text.length && Character.isWhitespace(_text[_pos])) {
+            _pos += 1;
+        }
+        return _pos < _text.length;
+    }
+
+    /** Throw an error if there is no other word in _text. */
+    private void requireNext() {
+        if (!hasNext()) {
+            throw new EnigmaException("Config file has wrong format.");
+        }
+    }
+
+    /** Make the next word in _text, which must exist, the current one. */
+    private void advance() {
+        hasNext();
+        _tokenBefore = _end;
+        _start = _pos;
+        while (_pos < _text.length && !Character.isWhitespace(_text[_pos])) {
+            _pos += 1;
+        }
+        _end = _pos;
+    }
+
+    /** Return the value of the next word in _text, which must be an
+     *  integer, making it the current one. */
+    private int nextInt() {
+        requireNext();
+        advance();
+        try {
+            return Integer.parseInt(word(_start, _end));
+        } catch (NumberFormatException excp) {
+            throw new EnigmaException("Config file has wrong format.");
+        }
+    }
+
+    /** Return true iff the current word contains C. */
+    private boolean tokenContains(char c) {
+        for (int i = _start; i < _end; i += 1) {
+            if (_text[i] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return _text[FROM .. TO - 1]. */
+    private String word(int from, int to) {
+        return new String(_text, from, to - from);
+    }
+
+    @Override
+    public Rotor rotor(String name) {
+        Integer r = _index.get(name);
+        if (r == null) {
+            return null;
+        }
+        return _built.computeIfAbsent(r, this::build);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return _index.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return _entries.size();
+    }
+
+    @Override
+    public List<String> names() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int r) {
+                return _entries.get(r).name;
+            }
+
+            @Override
+            public int size() {
+                return _entries.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Rotor> rotors() {
+        ArrayList<Rotor> result = new ArrayList<>(_entries.size());
+        for (int r = 0; r < _entries.size(); r += 1) {
+            result.add(_built.computeIfAbsent(r, this::build));
+        }
+        return result;
+    }
+
+    /** Return the number of rotors built so far. */
+    int built() {
+        return _built.size();
+    }
+
+    /** Return rotor R, built from its description. */
+    private Rotor build(int r) {
+        Entry entry = _entries.get(r);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = Math.max(entry.from, 0); i < entry.to; i += 1) {
+            if (!Character.isWhitespace(_text[i])) {
+                cycles.append(_text[i]);
+            }
+        }
+        Permutation perm = new Permutation(cycles.toString(), _alphabet);
+        if (entry.type == 'M') {
+            return new MovingRotor(entry.name, perm, entry.notches);
+        } else if (entry.type == 'N') {
+            return new FixedRotor(entry.name, perm);
+        } else {
+            return new Reflector(entry.name, perm);
+        }
+    }
+
+    /** The description of one rotor. */
+    private static class Entry {
+        /** A rotor named NAME of type TYPE with notches NOTCHES, whose
+         *  cycles are in _text[FROM .. TO - 1]. */
+        Entry(String name, char type, String notches, int from, int to) {
+            this.name = name;
+            this.type = type;
+            this.notches = notches;
+            this.from = from;
+            this.to = to;
+        }
+
+        /** Name of the rotor. */
+        private final String name;
+        /** Type of the rotor: 'M' (moving), 'N' (fixed) or other
+         *  (reflector). */
+        private final char type;
+        /** Notches of the rotor. */
+        private final String notches;
+        /** Bounds of its cycles in _text, or -1 if none. */
+        private final int from, to;
+    }
+
+    /** Text of the configuration file. */
+    private final char[] _text;
+
+    /** Position of the next character of _text to read. */
+    private int _pos;
+
+    /** Bounds of the current word, and end of the word before it. */
+    private int _start, _end, _tokenBefore;
+
+    /** Alphabet of the rotors. */
+    private Alphabet _alphabet;
+
+    /** Characters of the cycle being checked. */
+    private char[] _cycle = new char[INITIAL_CYCLE_SIZE];
+
+    /** For each character index, the stamp of the last rotor whose
+     *  cycles mapped it. */
+    private int[] _seen;
+
+    /** Initial size of _cycle. */
+    private static final int INITIAL_CYCLE_SIZE = 64;
+
+    /** The rotor descriptions, in order. */
+    private final ArrayList<Entry> _entries = new ArrayList<>();
+
+    /** Number of the first rotor of each name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+
+    /** The rotors built so far, by number. */
+    private final ConcurrentHashMap<Integer, Rotor> _built =
+        new ConcurrentHashMap<>();
+}
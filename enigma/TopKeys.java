@@ -0,0 +1,75 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The best few keys found by a search: at most a fixed number of
+ *  KeyCandidates, keeping the best of all those added, and each settings
+ *  line at most once.  Searches ask accepts before building a candidate,
+ *  so that the many keys that could not be kept cost nothing.  Any number
+ *  of threads may share one.
+ *  @author Chris Jereza
+ */
+class TopKeys {
+
+    /** A collection keeping the best CAPACITY keys added to it. */
+    TopKeys(int capacity) {
+        if (capacity < 1) {
+            throw new EnigmaException("Must keep at least one key.");
+        }
+        _capacity = capacity;
+    }
+
+    /** Return true iff a key scoring SCORE might be kept if added now. */
+    synchronized boolean accepts(double score) {
+        return _worst.size() < _capacity || score >= _worst.peek().score();
+    }
+
+    /** Add KEY, keeping it if it is among the best I have seen and I do
+     *  not have its settings line already.  Returns true iff it is
+     *  kept. */
+    synchronized boolean add(KeyCandidate key) {
+        if (!accepts(key.score()) || !_settings.add(key.settings())) {
+            return false;
+        }
+        _worst.add(key);
+        if (_worst.size() > _capacity) {
+            KeyCandidate dropped = _worst.remove();
+            _settings.remove(dropped.settings());
+            return dropped != key;
+        }
+        return true;
+    }
+
+    /** Add all the keys in KEYS, as by add. */
+    void addAll(Iterable<KeyCandidate> keys) {
+        for (KeyCandidate key : keys) {
+            add(key);
+        }
+    }
+
+    /** Return the keys I have kept, best first. */
+    synchronized List<KeyCandidate> list() {
+        ArrayList<KeyCandidate> result = new ArrayList<>(_worst);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the number of keys I have kept. */
+    synchronized int size() {
+        return _worst.size();
+    }
+
+    /** Most keys kept. */
+    private final int _capacity;
+
+    /** The keys kept, worst first. */
+    private final PriorityQueue<KeyCandidate> _worst =
+        new PriorityQueue<>(Collections.reverseOrder());
+
+    /** The settings lines of the keys in _worst. */
+    private final HashSet<String> _settings = new HashSet<>();
+}
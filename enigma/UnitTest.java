@@ -10,9 +10,21 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class,
+        textui.runClasses(AlphabetTest.class,
+                          PermutationTest.class,
+                          LineReaderTest.class,
+                          GroupedWriterTest.class,
                           MovingRotorTest.class,
-                          MachineTest.class);
+                          MachineTest.class,
+                          ServiceTest.class,
+                          DaemonTest.class,
+                          BatchTest.class,
+                          RotorLibraryTest.class,
+                          KeySearchTest.class,
+                          BombeTest.class,
+                          NgramScorerTest.class,
+                          SearchCoordinatorTest.class,
+                          PipelineTest.class);
     }
 }
 